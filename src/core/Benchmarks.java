@@ -0,0 +1,372 @@
+package core;
+
+import tileengine.AnsiRenderer;
+import tileengine.TERenderer;
+import tileengine.TETile;
+
+import java.awt.GraphicsEnvironment;
+import java.awt.Point;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Times the hot paths of the game and compares them with a saved baseline, so a change
+ * that makes one of them slower, or makes it allocate more, shows up before it ships.
+ *
+ * Benchmarks:
+ *
+ *   generate.KIND.WxH   World.generate for each generator at three sizes, cycling
+ *                       through eight seeds
+ *   los.rN              World.updateLineOfSight at radius N on a game-sized map, from
+ *                       a rotating set of floor tiles
+ *   render.ansi.full    AnsiRenderer drawing a whole frame, the headless render path
+ *   render.ansi.move    AnsiRenderer drawing a frame where the avatar moved one tile
+ *   render.stddraw      TERenderer.drawTiles; skipped when there is no display, since
+ *                       StdDraw can't start headless
+ *   tostring.WxH        TETile.toString
+ *   save.encode         GameSession.toGameState plus SaveCodec.encode, after a game
+ *                       collected a few coins
+ *   save.decode         SaveCodec.decode of that save
+ *   save.load           SaveCodec.decode plus GameSession.restore, which regenerates
+ *                       the world
+ *
+ * Each benchmark runs for a warmup period so the JIT settles, then for ROUNDS timed
+ * rounds, and reports the time per operation of the median round and of the fastest.
+ * The fastest round is the one compared with the baseline: other processes and the GC
+ * can only slow a round down, so the best round varies far less from run to run than
+ * the median does. Allocation is counted with the JVM's per-thread allocation counter
+ * over all timed rounds, so it covers everything the operation allocates on the calling
+ * thread. Every result is folded into a volatile field so the JIT can't discard the
+ * work.
+ *
+ * The baseline is a tab-separated file of name, best nanoseconds per operation and
+ * bytes per operation. A benchmark regresses when its time is more than the threshold
+ * (50% by default) above the baseline, or its allocation more than 10% plus 256 bytes
+ * above it. Timings only compare well on the machine the baseline was taken on;
+ * allocation compares anywhere with the same JDK.
+ *
+ * To tell a slower build from a slower machine, every run also times a calibration
+ * workload (sorting ints, unrelated to the game) before and after the benchmarks, and
+ * scales the baseline's times by how the calibration compares with the baseline's. This
+ * cancels the drift of a busy or shared machine, not the difference between two
+ * different CPUs.
+ *
+ * Usage: java core.Benchmarks [--filter text] [--baseline file] [--write-baseline file]
+ *        [--threshold R] [--quick]
+ * --filter runs only the benchmarks whose names contain text; --quick shortens the
+ * warmup and rounds for a rough look, too short for the JIT to finish, so its times
+ * don't compare with a baseline and it refuses --baseline and --write-baseline. Exits
+ * with status 2 if anything regressed.
+ */
+public class Benchmarks {
+    private static final int ROUNDS = 10;
+    private static final long[] SEEDS = {1, 42, 1234, 99999, 271828, 314159, 8675309, 2024};
+    private static final double DEFAULT_THRESHOLD = 0.5;
+    // Allocation is nearly deterministic, so it gets a much tighter limit than time. The
+    // allowance covers small objects that escape analysis removes in some runs and not others.
+    private static final double BYTES_THRESHOLD = 0.1;
+    private static final double BYTES_ALLOWANCE = 256;
+    private static final String CALIBRATE = "calibrate";
+
+    private static volatile long sink;
+
+    /** One operation to time; i counts the calls, for cycling through inputs. */
+    @FunctionalInterface
+    interface Op {
+        long run(int i) throws Exception;
+    }
+
+    record Case(String name, Op op) {
+    }
+
+    record Result(String name, long ops, double nsPerOp, double bestNsPerOp, double bytesPerOp) {
+    }
+
+    record Baseline(double nsPerOp, double bytesPerOp) {
+    }
+
+    private final long warmupNanos;
+    private final long roundNanos;
+    private final com.sun.management.ThreadMXBean threads;
+
+    Benchmarks(long warmupMillis, long roundMillis) {
+        this.warmupNanos = warmupMillis * 1_000_000;
+        this.roundNanos = roundMillis * 1_000_000;
+        this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * A fixed workload with nothing to do with the game (sorting 4096 shuffled ints), which
+     * measures how fast the machine is running right now.
+     */
+    static Case calibration() {
+        int[] shuffled = new Random(0).ints(4096).toArray();
+        int[] scratch = new int[shuffled.length];
+        return new Case(CALIBRATE, i -> {
+            System.arraycopy(shuffled, 0, scratch, 0, shuffled.length);
+            Arrays.sort(scratch);
+            return scratch[i & (scratch.length - 1)];
+        });
+    }
+
+    static List<Case> cases() throws IOException {
+        List<Case> cases = new ArrayList<>();
+        int[][] sizes = {{GameSession.WIDTH, GameSession.HEIGHT}, {200, 80}, {400, 160}};
+        for (WorldGenerator.Kind kind : WorldGenerator.Kind.values()) {
+            for (int[] size : sizes) {
+                int w = size[0];
+                int h = size[1];
+                cases.add(new Case("generate." + kind.name().toLowerCase(Locale.ROOT) + "." + w + "x" + h,
+                        i -> new World(w, h, SEEDS[i % SEEDS.length], kind).generate()[w / 2][h / 2].id()));
+            }
+        }
+
+        World losWorld = new World(GameSession.WIDTH, GameSession.HEIGHT, SEEDS[0]);
+        TETile[][] losTiles = losWorld.generate();
+        List<Point> floor = new ArrayList<>();
+        for (int x = 0; x < GameSession.WIDTH; x++) {
+            for (int y = 0; y < GameSession.HEIGHT; y++) {
+                if (Rules.isGround(losTiles[x][y])) {
+                    floor.add(new Point(x, y));
+                }
+            }
+        }
+        // Every seventh floor tile, to spread the viewpoints over rooms and hallways.
+        Point[] eyes = new Point[Math.min(64, floor.size())];
+        for (int k = 0; k < eyes.length; k++) {
+            eyes[k] = floor.get((int) ((long) k * 7 % floor.size()));
+        }
+        for (int radius : new int[] {4, 8, 16, 32}) {
+            cases.add(new Case("los.r" + radius, i -> {
+                Point eye = eyes[i % eyes.length];
+                losWorld.updateLineOfSight(eye.x, eye.y, radius);
+                return losWorld.getVisibility()[eye.x][eye.y] ? 1 : 0;
+            }));
+        }
+
+        GameSession session = GameSession.newGame(GameSession.WIDTH, GameSession.HEIGHT, SEEDS[0]);
+        TETile[][] frame = TETile.copyOf(session.getWorld());
+        TETile[][] moved = TETile.copyOf(frame);
+        Point avatar = session.getAvatarPosition();
+        moved[avatar.x][avatar.y] = frame[avatar.x + 1][avatar.y];
+        moved[avatar.x + 1][avatar.y] = frame[avatar.x][avatar.y];
+        AnsiRenderer full = new AnsiRenderer(Writer.nullWriter(), GameSession.WIDTH, GameSession.HEIGHT, 1);
+        cases.add(new Case("render.ansi.full", i -> {
+            full.invalidate();
+            full.renderFrame(frame);
+            return i;
+        }));
+        AnsiRenderer incremental = new AnsiRenderer(Writer.nullWriter(), GameSession.WIDTH, GameSession.HEIGHT, 1);
+        cases.add(new Case("render.ansi.move", i -> {
+            incremental.renderFrame((i & 1) == 0 ? frame : moved);
+            return i;
+        }));
+        if (!GraphicsEnvironment.isHeadless()) {
+            TERenderer ter = new TERenderer();
+            ter.initialize(GameSession.WIDTH, GameSession.HEIGHT);
+            cases.add(new Case("render.stddraw", i -> {
+                ter.drawTiles(frame);
+                return i;
+            }));
+        }
+
+        for (int[] size : new int[][] {{GameSession.WIDTH, GameSession.HEIGHT}, {400, 160}}) {
+            TETile[][] world = size[0] == GameSession.WIDTH ? frame : new World(size[0], size[1], SEEDS[0]).generate();
+            cases.add(new Case("tostring." + size[0] + "x" + size[1], i -> TETile.toString(world).length()));
+        }
+
+        for (int coins = 0; coins < 5 && session.startAutoWalkToNearestCoin(); coins++) {
+            while (session.isAutoWalking()) {
+                session.stepAutoWalk();
+            }
+        }
+        byte[] save = SaveCodec.encode(session.toGameState());
+        cases.add(new Case("save.encode", i -> SaveCodec.encode(session.toGameState()).length));
+        cases.add(new Case("save.decode", i -> SaveCodec.decode(save).getAvatarPosition().x));
+        cases.add(new Case("save.load", i -> GameSession.restore(SaveCodec.decode(save)).getCoinsCollected()));
+        return cases;
+    }
+
+    Result measure(Case c) throws Exception {
+        long acc = 0;
+        int i = 0;
+        long end = System.nanoTime() + warmupNanos;
+        while (System.nanoTime() < end) {
+            acc += c.op().run(i++);
+        }
+
+        double[] rounds = new double[ROUNDS];
+        long ops = 0;
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            long now = start;
+            long n = 0;
+            while (now - start < roundNanos) {
+                acc += c.op().run(i++);
+                n++;
+                now = System.nanoTime();
+            }
+            rounds[r] = (double) (now - start) / n;
+            ops += n;
+        }
+        long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        sink += acc;
+
+        Arrays.sort(rounds);
+        return new Result(c.name(), ops, rounds[ROUNDS / 2], rounds[0], (double) bytes / ops);
+    }
+
+    static Map<String, Baseline> readBaseline(Path file) throws IOException {
+        Map<String, Baseline> baseline = new LinkedHashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length != 3) {
+                    throw new IOException("Bad baseline line: " + line);
+                }
+                baseline.put(fields[0], new Baseline(Double.parseDouble(fields[1]), Double.parseDouble(fields[2])));
+            }
+        }
+        return baseline;
+    }
+
+    static void writeBaseline(List<Result> results, Writer out) {
+        PrintWriter pw = new PrintWriter(out);
+        pw.printf(Locale.ROOT, "# core.Benchmarks baseline: %s %s, %s %s, %d cores%n",
+                System.getProperty("java.vm.name"), System.getProperty("java.version"),
+                System.getProperty("os.name"), System.getProperty("os.arch"),
+                Runtime.getRuntime().availableProcessors());
+        pw.println("# name\tbest ns/op\tbytes/op");
+        for (Result r : results) {
+            pw.printf(Locale.ROOT, "%s\t%.1f\t%.1f%n", r.name(), r.bestNsPerOp(), r.bytesPerOp());
+        }
+        pw.flush();
+    }
+
+    /**
+     * @return a description of how r regressed from base, or null if it didn't
+     */
+    static String regression(Result r, Baseline base, double threshold, double speed) {
+        List<String> worse = new ArrayList<>();
+        double expected = base.nsPerOp() * speed;
+        if (r.bestNsPerOp() > expected * (1 + threshold)) {
+            worse.add(String.format(Locale.ROOT, "time %+.0f%%", 100 * (r.bestNsPerOp() / expected - 1)));
+        }
+        if (r.bytesPerOp() > base.bytesPerOp() * (1 + BYTES_THRESHOLD) + BYTES_ALLOWANCE) {
+            worse.add(String.format(Locale.ROOT, "allocation %.0f -> %.0f B/op", base.bytesPerOp(), r.bytesPerOp()));
+        }
+        return worse.isEmpty() ? null : String.join(", ", worse);
+    }
+
+    private static String formatNanos(double ns) {
+        if (ns >= 1e6) {
+            return String.format(Locale.ROOT, "%.2f ms", ns / 1e6);
+        }
+        if (ns >= 1e3) {
+            return String.format(Locale.ROOT, "%.2f us", ns / 1e3);
+        }
+        return String.format(Locale.ROOT, "%.1f ns", ns);
+    }
+
+    public static void main(String[] args) throws Exception {
+        String filter = "";
+        String baselineFile = null;
+        String writeFile = null;
+        double threshold = DEFAULT_THRESHOLD;
+        boolean quick = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--filter" -> filter = args[++i];
+                case "--baseline" -> baselineFile = args[++i];
+                case "--write-baseline" -> writeFile = args[++i];
+                case "--threshold" -> threshold = Double.parseDouble(args[++i]);
+                case "--quick" -> quick = true;
+                default -> {
+                    System.err.println("Usage: java core.Benchmarks [--filter text] [--baseline file]"
+                            + " [--write-baseline file] [--threshold R] [--quick]");
+                    System.exit(1);
+                }
+            }
+        }
+        if (quick && (baselineFile != null || writeFile != null)) {
+            System.err.println("--quick is too short to compare with or record a baseline");
+            System.exit(1);
+        }
+        Map<String, Baseline> baseline = baselineFile == null ? Map.of() : readBaseline(Path.of(baselineFile));
+        Benchmarks bench = quick ? new Benchmarks(200, 50) : new Benchmarks(1000, 250);
+
+        // Calibrate before and after, since a shared machine's speed drifts during a run.
+        Case calibration = calibration();
+        List<Result> measured = new ArrayList<>();
+        Result calibrationBefore = bench.measure(calibration);
+        for (Case c : cases()) {
+            if (c.name().contains(filter)) {
+                measured.add(bench.measure(c));
+            }
+        }
+        Result calibrationAfter = bench.measure(calibration);
+        Result calibrated = new Result(CALIBRATE, calibrationBefore.ops() + calibrationAfter.ops(),
+                (calibrationBefore.nsPerOp() + calibrationAfter.nsPerOp()) / 2,
+                (calibrationBefore.bestNsPerOp() + calibrationAfter.bestNsPerOp()) / 2, 0);
+        List<Result> results = new ArrayList<>();
+        results.add(calibrated);
+        results.addAll(measured);
+
+        // Baseline times are scaled by how much slower the machine is now than when the
+        // baseline was taken.
+        Baseline baseCalibration = baseline.get(CALIBRATE);
+        double speed = baseCalibration == null ? 1 : calibrated.bestNsPerOp() / baseCalibration.nsPerOp();
+        if (baseCalibration != null) {
+            System.out.printf(Locale.ROOT, "machine runs at %.0f%% of the baseline's speed%n", 100 / speed);
+        }
+        System.out.printf("%-24s %12s %12s %12s  %s%n", "benchmark", "median/op", "best/op", "alloc/op", "vs baseline");
+        int regressions = 0;
+        for (Result r : results) {
+            Baseline base = baseline.get(r.name());
+            String comparison = "";
+            if (base != null && r != calibrated) {
+                String worse = regression(r, base, threshold, speed);
+                double change = r.bestNsPerOp() / (base.nsPerOp() * speed) - 1;
+                comparison = String.format(Locale.ROOT, "%+.0f%%", 100 * change);
+                if (worse != null) {
+                    comparison += "  REGRESSED: " + worse;
+                    regressions++;
+                }
+            }
+            System.out.printf(Locale.ROOT, "%-24s %12s %12s %10.0f B  %s%n", r.name(), formatNanos(r.nsPerOp()),
+                    formatNanos(r.bestNsPerOp()), r.bytesPerOp(), comparison);
+        }
+        if (GraphicsEnvironment.isHeadless() && "render.stddraw".contains(filter)) {
+            System.out.println("render.stddraw skipped: no display");
+        }
+
+        if (writeFile != null) {
+            try (Writer out = Files.newBufferedWriter(Path.of(writeFile))) {
+                writeBaseline(results, out);
+            }
+        }
+        if (regressions > 0) {
+            System.out.println(regressions + " benchmark(s) regressed by more than "
+                    + Math.round(threshold * 100) + "%");
+            System.exit(2);
+        }
+    }
+}
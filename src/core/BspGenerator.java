@@ -0,0 +1,201 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import utils.RandomUtils;
+
+/**
+ * Generates a world by binary space partitioning. The map is split in two at a random
+ * line, and each half again, until every part (a leaf) is at most the largest room size.
+ * Neighbouring leaves share the tiles along their split line, and the outer leaves reach
+ * the edge of the map, so one line of wall can serve the rooms on both sides of it. Each
+ * leaf then gets exactly one room, so placing a room never fails and costs O(1).
+ *
+ * Split lines are chosen so no leaf is smaller than the smallest room, and so that both
+ * halves together need no more leaves than the whole did: any line across the map then
+ * crosses as few leaves, and so as few walls, as it can. On the 80x30 map that is 7 leaves
+ * across and 3 down, and rooms that fill their leaves have 72x26 tiles of floor, a fill
+ * ratio of 0.78 whatever the seed.
+ *
+ * Room sizes are settled before any room is carved. Each room grows from the minimum size
+ * toward filling its leaf by its own random share of a common factor, and the factor is
+ * found by binary search as the smallest that gives the rooms enough floor for the target
+ * fill ratio on their own. Hallways only add to that. A target above what full rooms give
+ * leaves every room filling its leaf.
+ *
+ * Rooms are joined along the tree: for every split, the room on each side closest to the
+ * middle of the split line is connected to its counterpart. Leaves are numbered depth
+ * first, so the rooms under any split are a contiguous range, and this takes O(rooms)
+ * per level of the tree.
+ */
+class BspGenerator implements WorldGenerator {
+    private static final int MIN_ROOM_W = 6;
+    private static final int MAX_ROOM_W = 14;
+    private static final int MIN_ROOM_H = 6;
+    private static final int MAX_ROOM_H = 12;
+    private static final int SEARCH_STEPS = 30;
+
+    private final World.Tuning tuning;
+    private Random random;
+
+    // Leaves as x, y, width, height.
+    private int[] leaves = new int[64];
+    private int leafCount;
+    // Splits in post-order as first room, first room of the second half, end, and the
+    // middle of the split line (x, y).
+    private int[] splits = new int[80];
+    private int splitCount;
+
+    BspGenerator(World.Tuning tuning) {
+        this.tuning = tuning;
+    }
+
+    @Override
+    public void generate(Layout layout, Random random) {
+        this.random = random;
+        leafCount = 0;
+        splitCount = 0;
+        split(0, 0, layout.width(), layout.height());
+
+        // How much of its spare width and height each room takes at factor 1.
+        double[] share = new double[leafCount];
+        for (int i = 0; i < leafCount; i++) {
+            share[i] = RandomUtils.uniform(random, 0.5, 1.0);
+        }
+        double target = tuning.minFillRatio() * layout.width() * layout.height();
+        double lo = 0;
+        double hi = 2;  // every share is at least 0.5, so 2 fills every leaf
+        for (int step = 0; step < SEARCH_STEPS; step++) {
+            double mid = (lo + hi) / 2;
+            if (floorArea(share, mid) >= target) {
+                hi = mid;
+            } else {
+                lo = mid;
+            }
+        }
+
+        for (int i = 0; i < leafCount; i++) {
+            int lx = leaves[4 * i];
+            int ly = leaves[4 * i + 1];
+            int lw = leaves[4 * i + 2];
+            int lh = leaves[4 * i + 3];
+            int w = roomSize(MIN_ROOM_W, lw, share[i], hi);
+            int h = roomSize(MIN_ROOM_H, lh, share[i], hi);
+            int x = lx + RandomUtils.uniform(random, lw - w + 1);
+            int y = ly + RandomUtils.uniform(random, lh - h + 1);
+            layout.addRoom(x, y, w, h);
+        }
+
+        for (int s = 0; s < splitCount; s++) {
+            int first = splits[5 * s];
+            int middle = splits[5 * s + 1];
+            int end = splits[5 * s + 2];
+            int sx = splits[5 * s + 3];
+            int sy = splits[5 * s + 4];
+            layout.connect(closestTo(layout, first, middle, sx, sy), closestTo(layout, middle, end, sx, sy), random);
+        }
+    }
+
+    // Splits the area into leaves, recording each split after those inside it. The two
+    // halves of a split share the line of tiles it is on.
+    private void split(int x, int y, int w, int h) {
+        boolean splitX = w > MAX_ROOM_W;
+        boolean splitY = h > MAX_ROOM_H;
+        if (splitX && splitY) {
+            splitX = random.nextBoolean();
+        }
+        if (!splitX && !splitY) {
+            if (4 * leafCount == leaves.length) {
+                leaves = Arrays.copyOf(leaves, leaves.length * 2);
+            }
+            leaves[4 * leafCount] = x;
+            leaves[4 * leafCount + 1] = y;
+            leaves[4 * leafCount + 2] = w;
+            leaves[4 * leafCount + 3] = h;
+            leafCount++;
+            return;
+        }
+
+        int first = leafCount;
+        int middle;
+        int sx;
+        int sy;
+        if (splitX) {
+            int left = cut(w, MIN_ROOM_W, MAX_ROOM_W);
+            split(x, y, left, h);
+            middle = leafCount;
+            split(x + left - 1, y, w - left + 1, h);
+            sx = x + left - 1;
+            sy = y + h / 2;
+        } else {
+            int bottom = cut(h, MIN_ROOM_H, MAX_ROOM_H);
+            split(x, y, w, bottom);
+            middle = leafCount;
+            split(x, y + bottom - 1, w, h - bottom + 1);
+            sx = x + w / 2;
+            sy = y + bottom - 1;
+        }
+        if (5 * splitCount == splits.length) {
+            splits = Arrays.copyOf(splits, splits.length * 2);
+        }
+        splits[5 * splitCount] = first;
+        splits[5 * splitCount + 1] = middle;
+        splits[5 * splitCount + 2] = leafCount;
+        splits[5 * splitCount + 3] = sx;
+        splits[5 * splitCount + 4] = sy;
+        splitCount++;
+    }
+
+    // A random size for the first half of a split across the given length, among those that
+    // keep both halves at least min and need no more leaves between them than the whole.
+    private int cut(int length, int min, int max) {
+        int leaves = leavesAcross(length, max);
+        int choices = 0;
+        for (int first = min; first <= length + 1 - min; first++) {
+            if (leavesAcross(first, max) + leavesAcross(length + 1 - first, max) == leaves) {
+                choices++;
+            }
+        }
+        int pick = RandomUtils.uniform(random, choices);
+        for (int first = min; ; first++) {
+            if (leavesAcross(first, max) + leavesAcross(length + 1 - first, max) == leaves && pick-- == 0) {
+                return first;
+            }
+        }
+    }
+
+    // The fewest leaves of at most max tiles, sharing their edges, that cover the length.
+    private static int leavesAcross(int length, int max) {
+        return (length - 1 + max - 2) / (max - 1);
+    }
+
+    private static int roomSize(int min, int leaf, double share, double factor) {
+        return Math.min(leaf, min + (int) Math.round(factor * share * (leaf - min)));
+    }
+
+    // Total room floor if every room were sized with the given factor.
+    private double floorArea(double[] share, double factor) {
+        double area = 0;
+        for (int i = 0; i < leafCount; i++) {
+            int w = roomSize(MIN_ROOM_W, leaves[4 * i + 2], share[i], factor);
+            int h = roomSize(MIN_ROOM_H, leaves[4 * i + 3], share[i], factor);
+            area += (w - 2) * (h - 2);
+        }
+        return area;
+    }
+
+    // The room in [from, to) whose center is nearest (x, y); the first one on ties.
+    private static int closestTo(Layout layout, int from, int to, int x, int y) {
+        int best = from;
+        int bestDist = Integer.MAX_VALUE;
+        for (int r = from; r < to; r++) {
+            int dist = Math.abs(layout.centerX(r) - x) + Math.abs(layout.centerY(r) - y);
+            if (dist < bestDist) {
+                bestDist = dist;
+                best = r;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,184 @@
+package core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The levels of one game, linked by stairs. Level d is generated from the game's seed and
+ * d alone (see levelSeed), so a level only has to exist while it is being played or is
+ * about to be: it is generated the first time it is entered. Once the player heads for
+ * the stairs, generateAhead() starts on the level below in the background, so taking them
+ * doesn't wait for generation. Going anywhere else drops that level again. At most
+ * AHEAD_PERMITS levels are generated ahead at once in the whole process, however many
+ * games it runs.
+ *
+ * At most CACHED_LEVELS levels are kept whole. Past that, the one farthest from the
+ * current depth is dropped. If the player changed it, its GameState.LevelState (the
+ * collected coins and a TileDelta, a few bytes per coin) is kept instead and applied
+ * again when the level is next entered. Untouched levels are dropped outright, since they
+ * regenerate exactly. Memory therefore grows with what the player changed, not with how
+ * deep the game goes.
+ */
+final class Dungeon {
+    private static final int CACHED_LEVELS = 3;
+    // Half the cores, so that on a server generating ahead never starves the games.
+    private static final Semaphore AHEAD_PERMITS =
+            new Semaphore(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    // A dropped level that hasn't started yet skips generation once it gets a permit.
+    private static final Executor AHEAD = runnable -> Thread.ofVirtual().name("level-ahead").start(() -> {
+        AHEAD_PERMITS.acquireUninterruptibly();
+        try {
+            runnable.run();
+        } finally {
+            AHEAD_PERMITS.release();
+        }
+    });
+
+    private final int width;
+    private final int height;
+    private final long seed;
+    private final WorldGenerator.Kind generator;
+    private final Map<Integer, Level> levels = new HashMap<>();
+    // Changed levels dropped from the cache, by depth.
+    private final Map<Integer, GameState.LevelState> stored = new TreeMap<>();
+    // The level being generated ahead, or -1 if none.
+    private int aheadDepth = -1;
+    private CompletableFuture<Level> ahead;
+
+    /**
+     * @param stored the changed levels of a saved game, by depth; empty for a new game
+     */
+    Dungeon(int width, int height, long seed, WorldGenerator.Kind generator,
+            Map<Integer, GameState.LevelState> stored) {
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.generator = generator;
+        this.stored.putAll(stored);
+    }
+
+    /**
+     * @return the seed level depth is generated from; the top level uses the game's seed
+     *         itself, so single-level worlds are unchanged
+     */
+    static long levelSeed(long seed, int depth) {
+        if (depth == 0) {
+            return seed;
+        }
+        // SplitMix64's finalizer, so nearby depths and seeds give unrelated levels.
+        long z = seed + depth * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the level at depth, generating it and putting back any stored changes if it
+     * isn't cached, then drops the levels farthest away, and the level generated ahead
+     * unless it is the one below.
+     * @throws IOException if the level's stored changes are corrupt
+     */
+    Level enter(int depth) throws IOException {
+        Level level = levels.get(depth);
+        if (level == null) {
+            if (depth == aheadDepth) {
+                level = ahead.join();
+                aheadDepth = -1;
+                ahead = null;
+            } else {
+                level = Level.generate(width, height, seed, generator, depth);
+            }
+            GameState.LevelState saved = stored.remove(depth);
+            if (saved != null) {
+                level.restore(saved.collected(), saved.tileDelta());
+            }
+            levels.put(depth, level);
+        }
+        if (ahead != null && aheadDepth != depth + 1) {
+            ahead.cancel(false);
+            aheadDepth = -1;
+            ahead = null;
+        }
+        while (levels.size() > CACHED_LEVELS) {
+            evictFarthestFrom(depth);
+        }
+        return level;
+    }
+
+    /**
+     * Caches a level made elsewhere for this dungeon's seed and generator, such as a copy
+     * of one generated earlier, so entering its depth doesn't generate it again.
+     */
+    void add(Level level) {
+        levels.put(level.getDepth(), level);
+    }
+
+    /**
+     * Starts generating the level below depth in the background, unless it is cached or
+     * already under way. The next enter() picks it up, or drops it if it goes elsewhere.
+     */
+    void generateAhead(int depth) {
+        int below = depth + 1;
+        if (levels.containsKey(below) || aheadDepth == below) {
+            return;
+        }
+        if (ahead != null) {
+            ahead.cancel(false);
+        }
+        aheadDepth = below;
+        ahead = CompletableFuture.supplyAsync(() -> Level.generate(width, height, seed, generator, below), AHEAD);
+    }
+
+    /**
+     * @return true if a level is being generated ahead
+     */
+    boolean isGeneratingAhead() {
+        return ahead != null;
+    }
+
+    private void evictFarthestFrom(int depth) {
+        int farthest = depth;
+        for (int d : levels.keySet()) {
+            if (Math.abs(d - depth) > Math.abs(farthest - depth)) {
+                farthest = d;
+            }
+        }
+        Level level = levels.remove(farthest);
+        if (level.isChanged()) {
+            stored.put(farthest, level.toState());
+        }
+    }
+
+    /**
+     * Snapshots every changed level except the one at depth, cached or not, for a save.
+     * @return the levels' states by depth, in depth order
+     */
+    Map<Integer, GameState.LevelState> otherLevels(int depth) {
+        Map<Integer, GameState.LevelState> states = new TreeMap<>(stored);
+        for (Level level : levels.values()) {
+            if (level.getDepth() != depth && level.isChanged()) {
+                states.put(level.getDepth(), level.toState());
+            }
+        }
+        return states;
+    }
+
+    /**
+     * @return how many levels are kept whole
+     */
+    int cachedLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * @return how many dropped levels are kept as their changes
+     */
+    int storedLevelCount() {
+        return stored.size();
+    }
+}
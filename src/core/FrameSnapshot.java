@@ -0,0 +1,48 @@
+package core;
+
+/**
+ * Everything the render thread needs to draw one frame: a snapshot of the tile grid, a
+ * copy of the line-of-sight mask, the avatar position and the HUD values.
+ *
+ * Snapshots are recycled rather than reallocated. The simulation fills one with capture()
+ * and hands it to the GameRenderer; from then on only the render thread touches it until
+ * it is handed back, so the fields need no synchronization of their own.
+ */
+class FrameSnapshot {
+    TileGrid tiles;
+    final boolean[][] visible;
+    int avatarX;
+    int avatarY;
+    int coinsCollected;
+    int totalCoins;
+    boolean losEnabled;
+    String status;
+    long sequence;
+
+    FrameSnapshot(int width, int height) {
+        visible = new boolean[width][height];
+    }
+
+    /**
+     * Copies the current game state into this snapshot. The tiles cost O(1): the snapshot
+     * shares them with world until one side changes.
+     * @param visibility the line-of-sight mask, or null when LOS is off
+     * @param statusMessage transient HUD message, empty if none
+     */
+    void capture(TileGrid world, boolean[][] visibility, int ax, int ay,
+                 int coins, int total, String statusMessage, long seq) {
+        tiles = world.snapshot();
+        if (visibility != null) {
+            for (int x = 0; x < visible.length; x++) {
+                System.arraycopy(visibility[x], 0, visible[x], 0, visible[x].length);
+            }
+        }
+        avatarX = ax;
+        avatarY = ay;
+        coinsCollected = coins;
+        totalCoins = total;
+        losEnabled = visibility != null;
+        status = statusMessage;
+        sequence = seq;
+    }
+}
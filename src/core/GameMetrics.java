@@ -0,0 +1,96 @@
+package core;
+
+import utils.Histogram;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide performance counters for the game loop. Recording is a few atomic
+ * operations, so the metrics are always on; the overlay toggled with 'm' and the export
+ * below only read them.
+ *
+ * Times are recorded in nanoseconds and reported in microseconds.
+ */
+class GameMetrics {
+    /** Time spent drawing one whole frame on the render thread. */
+    static final Histogram FRAME_TIME = new Histogram();
+    /** Time spent in the tile-drawing pass of a frame. */
+    static final Histogram DRAW_TILES_TIME = new Histogram();
+    /** Time spent in World.updateLineOfSight. */
+    static final Histogram LOS_TIME = new Histogram();
+    /**
+     * Tiles drawn per frame: in the window every tile in sight that isn't empty, in a
+     * terminal only the cells that changed since the last frame.
+     */
+    static final Histogram TILES_DRAWN = new Histogram();
+    /** Keys waiting in StdDraw's queue on ticks that had input. */
+    static final Histogram INPUT_QUEUE_DEPTH = new Histogram();
+    /** Total simulation ticks run. */
+    static final LongAdder TICKS = new LongAdder();
+
+    private static final String EXPORT_PROPERTY = "byow.metricsFile";
+
+    private GameMetrics() {
+    }
+
+    /**
+     * If -Dbyow.metricsFile=path is set, registers a shutdown hook that writes the metrics
+     * report to that file when the JVM exits.
+     */
+    static void exportOnExit() {
+        String path = System.getProperty(EXPORT_PROPERTY);
+        if (path == null) {
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try (Writer out = new FileWriter(path)) {
+                writeTo(out);
+            } catch (IOException e) {
+                System.err.println("Failed to write metrics: " + e.getMessage());
+            }
+        }, "metrics-export"));
+    }
+
+    /**
+     * Writes every metric as CSV: name, count, p50, p90, p99, max.
+     */
+    static void writeTo(Appendable out) throws IOException {
+        out.append("metric,count,p50,p90,p99,max\n");
+        row(out, "frame_time_us", FRAME_TIME, 1000);
+        row(out, "draw_tiles_us", DRAW_TILES_TIME, 1000);
+        row(out, "los_us", LOS_TIME, 1000);
+        row(out, "tiles_drawn", TILES_DRAWN, 1);
+        row(out, "input_queue_depth", INPUT_QUEUE_DEPTH, 1);
+        out.append("ticks,").append(Long.toString(TICKS.sum())).append(",,,,\n");
+    }
+
+    /**
+     * Short lines for the in-game overlay.
+     */
+    static String[] overlayLines() {
+        return new String[] {
+            "frame us p50/p90/p99 " + triple(FRAME_TIME, 1000),
+            "drawTiles us " + triple(DRAW_TILES_TIME, 1000),
+            "LOS us " + triple(LOS_TIME, 1000),
+            "tiles/frame " + TILES_DRAWN.percentile(50),
+            "input depth p99/max " + INPUT_QUEUE_DEPTH.percentile(99) + "/" + INPUT_QUEUE_DEPTH.max(),
+        };
+    }
+
+    private static String triple(Histogram h, long divisor) {
+        return h.percentile(50) / divisor + "/" + h.percentile(90) / divisor + "/"
+                + h.percentile(99) / divisor;
+    }
+
+    private static void row(Appendable out, String name, Histogram h, long divisor) throws IOException {
+        out.append(name).append(',')
+                .append(Long.toString(h.count())).append(',')
+                .append(Long.toString(h.percentile(50) / divisor)).append(',')
+                .append(Long.toString(h.percentile(90) / divisor)).append(',')
+                .append(Long.toString(h.percentile(99) / divisor)).append(',')
+                .append(Long.toString(h.max() / divisor)).append('\n');
+    }
+}
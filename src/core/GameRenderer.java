@@ -0,0 +1,147 @@
+package core;
+
+import edu.princeton.cs.algs4.StdDraw;
+import tileengine.TETile;
+import tileengine.Tileset;
+import utils.FrameLimiter;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Draws the game on its own thread so that a slow frame never holds up input handling and a
+ * slow simulation step never holds up drawing.
+ *
+ * Frames are passed from the simulation through three recycled FrameSnapshots. The
+ * simulation owns the back buffer and the render thread owns the front buffer; publish()
+ * swaps the back buffer into the shared middle slot, and the render thread swaps the middle
+ * slot out whenever it holds a newer frame than the one last drawn. Each buffer belongs to
+ * exactly one side at a time, so neither thread ever waits on the other.
+ *
+ * While the render thread is running it is the only thread that may call StdDraw drawing
+ * methods. Call stop() before drawing anything else (menus, the victory screen).
+ */
+class GameRenderer implements GameView, Runnable {
+    private final int width;
+    private final int height;
+    private final int framesPerSecond;
+    private final AtomicReference<FrameSnapshot> middle;
+    private FrameSnapshot back;
+    private FrameSnapshot front;
+    private long published;
+
+    private volatile boolean running;
+    private volatile boolean showMetrics;
+    private Thread thread;
+
+    GameRenderer(int width, int height, int framesPerSecond) {
+        this.width = width;
+        this.height = height;
+        this.framesPerSecond = framesPerSecond;
+        this.back = new FrameSnapshot(width, height);
+        this.front = new FrameSnapshot(width, height);
+        this.middle = new AtomicReference<>(new FrameSnapshot(width, height));
+    }
+
+    /**
+     * Copies the given state into the back buffer and makes it the newest frame. Called
+     * from the simulation thread only.
+     */
+    @Override
+    public void publish(TileGrid world, boolean[][] visibility, int ax, int ay, int coins, int total,
+                        String status) {
+        published++;
+        back.capture(world, visibility, ax, ay, coins, total, status, published);
+        back = middle.getAndSet(back);
+    }
+
+    /**
+     * Shows or hides the performance overlay. Takes effect on the next published frame.
+     */
+    @Override
+    public void toggleMetricsOverlay() {
+        showMetrics = !showMetrics;
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        thread = new Thread(this, "render");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the render thread and waits for the frame in progress to finish.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        FrameLimiter limiter = new FrameLimiter(framesPerSecond);
+        long drawn = 0;
+        while (running) {
+            if (middle.get().sequence > drawn) {
+                front = middle.getAndSet(front);
+                drawn = front.sequence;
+                draw(front);
+            }
+            limiter.sync();
+        }
+    }
+
+    private void draw(FrameSnapshot frame) {
+        long frameStart = System.nanoTime();
+        StdDraw.clear(StdDraw.BLACK);
+
+        // NOTHING is blank on black, the same as the cleared screen, so those tiles (and
+        // any out of sight) are skipped.
+        TileGrid tiles = frame.tiles;
+        boolean[][] visible = frame.losEnabled ? frame.visible : null;
+        int nothing = Tileset.NOTHING.id();
+        int drawn = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if ((visible == null || visible[x][y]) && tiles.id(x, y) != nothing) {
+                    tiles.get(x, y).draw(x, y);
+                    drawn++;
+                }
+            }
+        }
+        GameMetrics.DRAW_TILES_TIME.record(System.nanoTime() - frameStart);
+        GameMetrics.TILES_DRAWN.record(drawn);
+
+        StdDraw.setPenColor(StdDraw.RED);
+        StdDraw.filledCircle(frame.avatarX + 0.6, frame.avatarY + 0.5, 0.4);
+
+        StdDraw.setPenColor(StdDraw.WHITE);
+        StdDraw.textLeft(1, height - 1, "Coins: " + frame.coinsCollected + "/" + frame.totalCoins
+                + " LOS:" + (frame.losEnabled ? "ON" : "OFF") + "  " + frame.status);
+
+        if (showMetrics) {
+            drawMetricsOverlay();
+        }
+
+        StdDraw.show();
+        GameMetrics.FRAME_TIME.record(System.nanoTime() - frameStart);
+    }
+
+    private void drawMetricsOverlay() {
+        String[] lines = GameMetrics.overlayLines();
+        StdDraw.setPenColor(StdDraw.YELLOW);
+        for (int i = 0; i < lines.length; i++) {
+            StdDraw.textRight(width - 1, height - 1 - i, lines[i]);
+        }
+    }
+}
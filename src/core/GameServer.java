@@ -0,0 +1,273 @@
+package core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts many games at once for players connecting over TCP, one GameSession each.
+ *
+ * A player connects with a raw-mode terminal client (for example
+ * "stty raw -echo; nc localhost 7777"), types a seed followed by S (or B for the BSP
+ * layout, O for outdoors), and then plays with the usual keys. The server sends back
+ * ANSI frames through a TerminalView, so after the first frame only the changed cells
+ * travel over the wire. ':' followed by q, n or a digit ends the session; nothing is
+ * saved on the server.
+ *
+ * Every connection runs on its own virtual thread, so an idle player is a parked thread
+ * blocked in read() and costs no CPU. Input is paced: a session draws at most one frame
+ * per tick and applies at most INPUT_BATCH keys per frame, leaving the rest in the socket
+ * so TCP flow control slows down a client that types faster than that. Likewise a client
+ * that stops reading blocks only its own thread once the socket's send buffer fills.
+ *
+ * The server only listens on the loopback interface.
+ *
+ * Usage: java core.GameServer [port] [maxSessions], or java core.Main --server [port].
+ */
+public class GameServer implements Closeable {
+    static final int DEFAULT_PORT = 7777;
+    static final int DEFAULT_MAX_SESSIONS = 10_000;
+
+    private static final int TICKS_PER_SECOND = 30;
+    private static final long TICK_NANOS = 1_000_000_000L / TICKS_PER_SECOND;
+    private static final int INPUT_BATCH = 64;
+    private static final int OUTPUT_BUFFER = 2048;
+    private static final int ACCEPT_BACKLOG = 1024;
+    private static final int IDLE_TIMEOUT_MS = 30 * 60 * 1000;
+    private static final int MAX_SEED_DIGITS = 18;
+    private static final long STATUS_NANOS = 3_000_000_000L;
+
+    private final ServerSocket server;
+    private final Semaphore sessionPermits;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final ThreadFactory sessionThreads = Thread.ofVirtual().name("session-", 0).factory();
+    private Thread acceptor;
+
+    /**
+     * Binds to the given port on the loopback interface. Call start() to accept players.
+     * @param port the port, or 0 for any free port (see getPort())
+     * @param maxSessions players allowed at once; more are turned away
+     */
+    public GameServer(int port, int maxSessions) throws IOException {
+        this.server = new ServerSocket(port, ACCEPT_BACKLOG, InetAddress.getLoopbackAddress());
+        this.sessionPermits = new Semaphore(maxSessions);
+    }
+
+    public void start() {
+        acceptor = new Thread(this::acceptLoop, "game-server-accept");
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return the number of players connected right now
+     */
+    public int activeSessions() {
+        return connections.size();
+    }
+
+    /**
+     * Stops accepting players and disconnects everyone still playing.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Socket s : connections) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("Accept failed: " + e.getMessage());
+                }
+                continue;
+            }
+            if (!sessionPermits.tryAcquire()) {
+                reject(socket);
+                continue;
+            }
+            connections.add(socket);
+            sessionThreads.newThread(() -> {
+                try {
+                    serve(socket);
+                } finally {
+                    connections.remove(socket);
+                    sessionPermits.release();
+                }
+            }).start();
+        }
+    }
+
+    private static void reject(Socket socket) {
+        try (socket) {
+            socket.getOutputStream().write("Server full, try again later\r\n".getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void serve(Socket socket) {
+        GameSession session = null;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(IDLE_TIMEOUT_MS);
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            session = readNewGame(in, out);
+            if (session == null) {
+                return;
+            }
+            TerminalView view = new TerminalView(out, GameSession.WIDTH, GameSession.HEIGHT, OUTPUT_BUFFER);
+            view.start();
+            try {
+                play(session, view, in);
+            } finally {
+                view.stop();
+            }
+        } catch (SocketTimeoutException e) {
+            // Idle too long; just drop the connection.
+        } catch (IOException e) {
+            // The player disconnected mid-frame, or the connection broke. Nothing to clean up
+            // beyond the socket, which try-with-resources closes.
+        } catch (RuntimeException e) {
+            logFailure(session, e);
+        }
+    }
+
+    // Logs a session that ended because of a bug rather than a disconnect, with what is
+    // needed to replay it.
+    private static void logFailure(GameSession session, RuntimeException e) {
+        String game = session == null ? "before a game started"
+                : "for seed " + session.getSeed() + " (" + session.getGenerator().name().toLowerCase(Locale.ROOT)
+                + ", depth " + session.getDepth() + ")";
+        System.err.println("Session failed " + game + ": " + e);
+        e.printStackTrace();
+    }
+
+    // Prompts for a seed the same way the main menu does: digits, then S (or B or O for the
+    // other generators). Returns the new game, or null if the player disconnects first.
+    private static GameSession readNewGame(InputStream in, OutputStream out) throws IOException {
+        out.write("\u001b[2J\u001b[HEnter Seed, Then Press S to Start (B for BSP, O for outdoors): "
+                .getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        StringBuilder digits = new StringBuilder();
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                return null;
+            }
+            char c = Character.toLowerCase((char) b);
+            if (Character.isDigit(c) && digits.length() < MAX_SEED_DIGITS) {
+                digits.append(c);
+            } else if ((c == 's' || c == 'b' || c == 'o') && digits.length() > 0) {
+                WorldGenerator.Kind generator = c == 'b' ? WorldGenerator.Kind.BSP
+                        : c == 'o' ? WorldGenerator.Kind.OUTDOOR : WorldGenerator.Kind.ROOMS;
+                return GameSession.newGame(GameSession.WIDTH, GameSession.HEIGHT, Long.parseLong(digits.toString()),
+                        generator);
+            }
+        }
+    }
+
+    // Runs one player's game until they win, quit or disconnect. Each round waits out the
+    // rest of the current tick, blocks for input, applies what arrived and draws one frame.
+    private static void play(GameSession session, TerminalView view, InputStream in) throws IOException {
+        byte[] keys = new byte[INPUT_BATCH];
+        String status = "";
+        long statusExpiresAt = 0;
+        publish(session, view, status);
+        long nextFrame = System.nanoTime() + TICK_NANOS;
+        while (true) {
+            long wait = nextFrame - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            // While auto-walking, or until a status message times out, keep ticking instead
+            // of blocking for keys.
+            boolean ticking = session.isAutoWalking() || !status.isEmpty();
+            int n = ticking ? Math.min(in.available(), keys.length) : 0;
+            if (n > 0 || !ticking) {
+                n = in.read(keys, 0, n > 0 ? n : keys.length);
+            }
+            if (n < 0) {
+                return;
+            }
+            for (int i = 0; i < n; i++) {
+                switch (session.step((char) (keys[i] & 0xFF))) {
+                    case WON -> {
+                        publish(session, view, "You collected all " + session.getTotalCoins() + " coins!");
+                        return;
+                    }
+                    case SAVE_AND_QUIT, SAVE_TO_SLOT_AND_QUIT, SAVE_TO_NEW_SLOT_AND_QUIT -> {
+                        return;
+                    }
+                    case SAVE_TO_SLOT -> {
+                        status = "Saving is not available on the server";
+                        statusExpiresAt = System.nanoTime() + STATUS_NANOS;
+                    }
+                    case METRICS_TOGGLED -> view.toggleMetricsOverlay();
+                    default -> {
+                    }
+                }
+            }
+            if (session.isAutoWalking()) {
+                if (session.stepAutoWalk() == GameSession.Event.WON) {
+                    publish(session, view, "You collected all " + session.getTotalCoins() + " coins!");
+                    return;
+                }
+            }
+            if (!status.isEmpty() && System.nanoTime() - statusExpiresAt > 0) {
+                status = "";
+            }
+            publish(session, view, status);
+            nextFrame = System.nanoTime() + TICK_NANOS;
+        }
+    }
+
+    private static void publish(GameSession session, TerminalView view, String status) throws IOException {
+        try {
+            view.publish(session.getTiles(), session.getVisibility(), session.getAvatarX(), session.getAvatarY(),
+                    session.getCoinsCollected(), session.getTotalCoins(),
+                    GameSession.joinHud(session.hudHint(), status));
+        } catch (UncheckedIOException e) {
+            // TerminalView's way of reporting that the connection broke.
+            throw e.getCause();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxSessions = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_SESSIONS;
+        GameServer server = new GameServer(port, maxSessions);
+        server.start();
+        System.out.println("BYOW server listening on " + server.server.getInetAddress().getHostAddress()
+                + ":" + server.getPort() + " (max " + maxSessions + " players)");
+    }
+}
@@ -0,0 +1,422 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * One game in progress: the dungeon and the level the avatar is on, the avatar, the coins
+ * collected so far and the player's settings. Coin counts and the world are the current
+ * level's, and collecting every coin on a level wins.
+ *
+ * step() applies a single key and reports what it did as an Event. It never draws, blocks
+ * or touches files; saving, rendering and quitting are up to whoever drives the session,
+ * in response to the events. Sessions share no state, so any number of them can run side
+ * by side in one process.
+ *
+ * Keys are the game's, case-insensitive: w/a/s/d move, o toggles line of sight, m asks
+ * for the metrics overlay, 1-9 save to a slot, and ':' followed by q, a slot digit or n
+ * saves and quits. c starts auto-walk to the nearest coin; the driver then calls
+ * stepAutoWalk() once per tick until isAutoWalking() turns false. Any movement key cancels
+ * it. '>' on stairs down and '<' on stairs up take them. Other keys do nothing.
+ */
+public class GameSession {
+    /** The width of a world of the default size, in tiles. */
+    public static final int WIDTH = 80;
+    /** The height of a world of the default size, in tiles. */
+    public static final int HEIGHT = 30;
+
+    /** What a key did. */
+    public enum Event {
+        /** Nothing changed, or a ':' command is waiting for its next key. */
+        NONE,
+        /** The avatar moved, possibly collecting a coin. */
+        MOVED,
+        /** The avatar took the stairs to another level. */
+        LEVEL_CHANGED,
+        /** The last coin was collected. */
+        WON,
+        /** Line of sight was turned on or off; see isLosEnabled(). */
+        LOS_TOGGLED,
+        /** The player asked to show or hide the metrics overlay. */
+        METRICS_TOGGLED,
+        /** The player asked to save to the slot given by getRequestedSlot() and keep playing. */
+        SAVE_TO_SLOT,
+        /** The player asked to save to the main save file and quit. */
+        SAVE_AND_QUIT,
+        /** The player asked to save to the slot given by getRequestedSlot() and quit. */
+        SAVE_TO_SLOT_AND_QUIT,
+        /** The player asked to save to the first free slot and quit. */
+        SAVE_TO_NEW_SLOT_AND_QUIT,
+        /** The key after ':' was not a command. */
+        COMMAND_CANCELLED
+    }
+
+    private final long seed;
+    private final WorldGenerator.Kind generator;
+    private final Dungeon dungeon;
+    private Level level;
+    private int avatarX;
+    private int avatarY;
+    private boolean losEnabled = false;
+    private int slot = -1;  // -1 means the game isn't tied to a slot yet
+    private boolean colonPending = false;
+    private int requestedSlot = -1;
+    private char lastMove;
+
+    private int[] autoWalkPath;
+    private int autoWalkStep;
+
+    private GameSession(long seed, WorldGenerator.Kind generator, Dungeon dungeon, Level level, Point avatar) {
+        this.seed = seed;
+        this.generator = generator;
+        this.dungeon = dungeon;
+        this.level = level;
+        this.avatarX = avatar.x;
+        this.avatarY = avatar.y;
+    }
+
+    /**
+     * Starts a new game in a world of the default size.
+     */
+    public static GameSession newGame(long seed) {
+        return newGame(WIDTH, HEIGHT, seed);
+    }
+
+    public static GameSession newGame(int width, int height, long seed) {
+        return newGame(width, height, seed, WorldGenerator.Kind.ROOMS);
+    }
+
+    /**
+     * Starts a new game in a world laid out by the given generator.
+     */
+    public static GameSession newGame(int width, int height, long seed, WorldGenerator.Kind generator) {
+        return newGame(width, height, seed, generator, Level.generate(width, height, seed, generator, 0));
+    }
+
+    /**
+     * Starts a new game on the given top level, generated for the same seed and generator
+     * and not played on. Levels below are generated as usual.
+     */
+    static GameSession newGame(int width, int height, long seed, WorldGenerator.Kind generator, Level top) {
+        Dungeon dungeon = new Dungeon(width, height, seed, generator, Map.of());
+        dungeon.add(top);
+        return new GameSession(seed, generator, dungeon, top, Rules.findStartingPosition(top.getWorld()));
+    }
+
+    /**
+     * Resumes a saved game in a world of the default size.
+     * @throws IOException if the saved tile changes are corrupt
+     */
+    public static GameSession restore(GameState state) throws IOException {
+        return restore(WIDTH, HEIGHT, state);
+    }
+
+    public static GameSession restore(int width, int height, GameState state) throws IOException {
+        Dungeon dungeon = new Dungeon(width, height, state.getSeed(), state.getGenerator(), state.getOtherLevels());
+        Level current = dungeon.enter(state.getDepth());
+        if (state.isLegacy()) {
+            // Serialized saves list only the coins collected; no other tile was changed.
+            World world = current.getWorldGen();
+            BitSet coins = state.getCollectedCoins(world);
+            for (int i = coins.nextSetBit(0); i >= 0; i = coins.nextSetBit(i + 1)) {
+                current.collectCoin(world.getCoinX(i), world.getCoinY(i));
+            }
+        } else {
+            current.restore(state.getCollected(), state.getTileDelta());
+        }
+        return new GameSession(state.getSeed(), state.getGenerator(), dungeon, current, state.getAvatarPosition());
+    }
+
+    /**
+     * Applies one key to the game.
+     * @return what the key did; the caller carries out any save or quit it asks for
+     */
+    public Event step(char key) {
+        char c = Character.toLowerCase(key);
+        if (colonPending) {
+            colonPending = false;
+            if (c == 'q') {
+                return Event.SAVE_AND_QUIT;
+            } else if (c >= '1' && c <= '9') {
+                requestedSlot = c - '0';
+                return Event.SAVE_TO_SLOT_AND_QUIT;
+            } else if (c == 'n') {
+                return Event.SAVE_TO_NEW_SLOT_AND_QUIT;
+            }
+            return Event.COMMAND_CANCELLED;
+        }
+
+        if (c == ':') {
+            colonPending = true;
+        } else if (c >= '1' && c <= '9') {
+            requestedSlot = c - '0';
+            return Event.SAVE_TO_SLOT;
+        } else if (c == 'o') {
+            losEnabled = !losEnabled;
+            return Event.LOS_TOGGLED;
+        } else if (c == 'm') {
+            return Event.METRICS_TOGGLED;
+        } else if (c == 'c') {
+            startAutoWalkToNearestCoin();
+        } else if (c == '>' && level.getWorld()[avatarX][avatarY] == Tileset.STAIRS_DOWN) {
+            autoWalkPath = null;
+            changeLevel(level.getDepth() + 1);
+            return Event.LEVEL_CHANGED;
+        } else if (c == '<' && level.getWorld()[avatarX][avatarY] == Tileset.STAIRS_UP) {
+            autoWalkPath = null;
+            changeLevel(level.getDepth() - 1);
+            return Event.LEVEL_CHANGED;
+        } else if (Rules.isMoveKey(c)) {
+            autoWalkPath = null;
+            return move(c);
+        }
+        return Event.NONE;
+    }
+
+    // Moves the avatar to the given level, onto the stairs leading back where it came from.
+    private void changeLevel(int depth) {
+        boolean down = depth > level.getDepth();
+        try {
+            level = dungeon.enter(depth);
+        } catch (IOException e) {
+            // Only a level restored from a corrupt save can fail here.
+            throw new UncheckedIOException(e);
+        }
+        Point arrival = down ? level.getStairsUp() : level.getStairsDown();
+        avatarX = arrival.x;
+        avatarY = arrival.y;
+        // A player who takes the stairs is likely to keep going.
+        dungeon.generateAhead(depth);
+    }
+
+    // Moves the avatar one tile in the direction of c unless a wall or the map edge is in the
+    // way, collecting any coin on the destination.
+    private Event move(char c) {
+        int newX = avatarX + Rules.dx(c);
+        int newY = avatarY + Rules.dy(c);
+        TETile[][] world = level.getWorld();
+        if (!Rules.canEnter(world, newX, newY)) {
+            return Event.NONE;
+        }
+        if (world[newX][newY] == Tileset.COIN) {
+            level.collectCoin(newX, newY);
+        }
+        avatarX = newX;
+        avatarY = newY;
+        lastMove = c;
+        if (world[newX][newY] == Tileset.STAIRS_DOWN) {
+            dungeon.generateAhead(level.getDepth());
+        }
+        return isWon() ? Event.WON : Event.MOVED;
+    }
+
+    /**
+     * Describes where the closest remaining coin is, as the crow flies, for the HUD.
+     * @return e.g. "Nearest coin: 12 NE", or "" if no coins are left
+     */
+    public String nearestCoinHint() {
+        SpatialIndex entities = level.getWorldGen().getEntities();
+        int id = entities.nearest(SpatialIndex.Type.COIN, avatarX, avatarY);
+        if (id < 0) {
+            return "";
+        }
+        int dx = entities.getX(id) - avatarX;
+        int dy = entities.getY(id) - avatarY;
+        String direction = (dy > 0 ? "N" : dy < 0 ? "S" : "") + (dx > 0 ? "E" : dx < 0 ? "W" : "");
+        return "Nearest coin: " + (Math.abs(dx) + Math.abs(dy)) + " " + direction;
+    }
+
+    /**
+     * Joins the depth below the top level, the key for any stairs the avatar stands on and
+     * nearestCoinHint(), for the HUD.
+     * @return e.g. "Depth 2  > to go down  Nearest coin: 12 NE"
+     */
+    public String hudHint() {
+        String hint = level.getDepth() > 0 ? "Depth " + level.getDepth() : "";
+        TETile under = level.getWorld()[avatarX][avatarY];
+        if (under == Tileset.STAIRS_DOWN) {
+            hint = joinHud(hint, "> to go down");
+        } else if (under == Tileset.STAIRS_UP) {
+            hint = joinHud(hint, "< to go up");
+        }
+        return joinHud(hint, nearestCoinHint());
+    }
+
+    /**
+     * Joins two pieces of HUD text, such as hudHint() and a driver's save or journal
+     * message, skipping empty ones.
+     */
+    static String joinHud(String hint, String message) {
+        if (message.isEmpty()) {
+            return hint;
+        }
+        return hint.isEmpty() ? message : hint + "  " + message;
+    }
+
+    /**
+     * Sets the avatar walking to the nearest remaining coin.
+     * @return false if no coin can be reached
+     */
+    public boolean startAutoWalkToNearestCoin() {
+        Pathfinder p = level.pathfinder();
+        if (!p.hasCoinField()) {
+            World worldGen = level.getWorldGen();
+            int[] xs = new int[worldGen.getCoinCount()];
+            int[] ys = new int[worldGen.getCoinCount()];
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = worldGen.getCoinX(i);
+                ys[i] = worldGen.getCoinY(i);
+            }
+            p.buildCoinField(xs, ys, level.getCollected());
+        }
+        return startAutoWalk(p.pathToNearestCoin(avatarX, avatarY));
+    }
+
+    /**
+     * Sets the avatar walking to (x, y) by a shortest route.
+     * @return false if (x, y) can't be reached
+     */
+    public boolean startAutoWalkTo(int x, int y) {
+        return startAutoWalk(level.pathfinder().findPath(avatarX, avatarY, x, y));
+    }
+
+    private boolean startAutoWalk(int[] path) {
+        autoWalkPath = path == null || path.length == 0 ? null : path;
+        autoWalkStep = 0;
+        return autoWalkPath != null;
+    }
+
+    public boolean isAutoWalking() {
+        return autoWalkPath != null;
+    }
+
+    /**
+     * Takes the next step of an auto-walk. The key it moved with is getLastMove().
+     * @return MOVED or WON, or NONE if there is no auto-walk in progress
+     */
+    public Event stepAutoWalk() {
+        if (autoWalkPath == null) {
+            return Event.NONE;
+        }
+        Pathfinder p = level.pathfinder();
+        char key = p.moveKey(p.cell(avatarX, avatarY), autoWalkPath[autoWalkStep++]);
+        if (autoWalkStep == autoWalkPath.length) {
+            autoWalkPath = null;
+        }
+        Event event = move(key);
+        if (event == Event.NONE) {
+            autoWalkPath = null;
+        }
+        return event;
+    }
+
+    /**
+     * @return the movement key of the avatar's most recent step
+     */
+    public char getLastMove() {
+        return lastMove;
+    }
+
+    /**
+     * Snapshots the game's saveable state. The result doesn't change as play continues.
+     */
+    public GameState toGameState() {
+        GameState.LevelState current = level.toState();
+        return new GameState(seed, generator, level.getDepth(), getAvatarPosition(), current.collected(),
+                current.coinCount(), current.tileDelta(), dungeon.otherLevels(level.getDepth()));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public WorldGenerator.Kind getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @return the live world grid of the current level, which the caller must not modify
+     */
+    public TETile[][] getWorld() {
+        return level.getWorld();
+    }
+
+    /**
+     * @return the live tiles of the current level; take a snapshot() to keep them as they
+     *         are now
+     */
+    TileGrid getTiles() {
+        return level.getTiles();
+    }
+
+    /**
+     * @return the level the avatar is on, 0 for the top
+     */
+    public int getDepth() {
+        return level.getDepth();
+    }
+
+    public int getAvatarX() {
+        return avatarX;
+    }
+
+    public int getAvatarY() {
+        return avatarY;
+    }
+
+    public Point getAvatarPosition() {
+        return new Point(avatarX, avatarY);
+    }
+
+    public int getCoinsCollected() {
+        return level.getCoinsCollected();
+    }
+
+    public int getTotalCoins() {
+        return level.getWorldGen().getCoinCount();
+    }
+
+    public boolean isWon() {
+        return getCoinsCollected() >= getTotalCoins();
+    }
+
+    public boolean isLosEnabled() {
+        return losEnabled;
+    }
+
+    /**
+     * Computes what the avatar can see.
+     * @return the visibility grid, or null if line of sight is off and everything is shown
+     */
+    public boolean[][] getVisibility() {
+        if (!losEnabled) {
+            return null;
+        }
+        level.getWorldGen().updateLineOfSight(avatarX, avatarY);
+        return level.getWorldGen().getVisibility();
+    }
+
+    /**
+     * @return the slot named by the last SAVE_TO_SLOT or SAVE_TO_SLOT_AND_QUIT event
+     */
+    public int getRequestedSlot() {
+        return requestedSlot;
+    }
+
+    /**
+     * @return the slot this game was last loaded from or saved to, or -1 if none
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+}
@@ -2,30 +2,176 @@ package core;
 
 import java.awt.Point;
 import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
+/**
+ * A saved game: the seed, where the avatar stands, and which coins have been collected.
+ *
+ * Coins are identified by their ordinal in World.placeCoins, and the collected ones are
+ * kept as a bitset over those ordinals. Saves written with Java serialization list
+ * collected coins by position instead; those come back with getCollectedCoins(World)
+ * converting positions to ordinals against the regenerated world.
+ *
+ * Current saves also carry a TileDelta: every tile that differs from the world the seed
+ * generates, coin pickups included. Restoring one is a single pass over the changed cells.
+ *
+ * The world is regenerated from the seed with the WorldGenerator the game was started
+ * with; serialized saves predate the choice and used WorldGenerator.Kind.ROOMS.
+ *
+ * A game is a Dungeon of levels. The coins and delta above are for the level the avatar
+ * is on, at getDepth(); every other level the player changed has a LevelState of its own.
+ * Serialized saves are on the top level, depth 0, with no others.
+ *
+ * The class stays Serializable, with its original field names, only so that saves
+ * written with Java serialization can still be read (see SaveCodec).
+ */
 public class GameState implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private final long seed;
     private final Point avatarPosition;
+    // Legacy saves only: collected coin positions. Null for current saves. Serialized saves
+    // hold an ArrayList here; the declared type has to stay List for them to load.
+    @SuppressWarnings("serial")
     private final List<Point> collectedCoins;
+    // Current saves only: bit i is set if coin i was collected. Null for legacy saves.
+    private final BitSet collected;
+    private final int coinCount;
+    // Encoded TileDelta against the seed's world. Null for legacy saves.
+    private final byte[] tileDelta;
+    // Null in serialized saves, meaning ROOMS.
+    private final WorldGenerator.Kind generator;
+    private final int depth;
+    // Changed levels other than the current one, by depth. Null in serialized saves.
+    private final TreeMap<Integer, LevelState> otherLevels;
 
+    /**
+     * What a save keeps of a level the avatar isn't on: the same as for the current level.
+     * @param collected bit i is set if coin i of the level was collected
+     * @param coinCount the number of coins on the level
+     * @param tileDelta the level's changed tiles from TileDelta.encode
+     */
+    public record LevelState(BitSet collected, int coinCount, byte[] tileDelta) implements Serializable {
+    }
+
+    /**
+     * @param generator the generator the world was made with
+     * @param depth the level the avatar is on; the coins and delta are that level's
+     * @param tileDelta the changed tiles from TileDelta.encode
+     * @param otherLevels every other changed level, by depth
+     */
+    public GameState(long seed, WorldGenerator.Kind generator, int depth, Point avatarPosition, BitSet collected,
+                     int coinCount, byte[] tileDelta, Map<Integer, LevelState> otherLevels) {
+        this.seed = seed;
+        this.avatarPosition = avatarPosition;
+        this.collectedCoins = null;
+        this.collected = collected;
+        this.coinCount = coinCount;
+        this.tileDelta = tileDelta;
+        this.generator = generator;
+        this.depth = depth;
+        this.otherLevels = new TreeMap<>(otherLevels);
+    }
+
+    /**
+     * Creates a state in the old position-list form, as read from a legacy save.
+     */
     public GameState(long seed, Point avatarPosition, List<Point> collectedCoins) {
         this.seed = seed;
         this.avatarPosition = avatarPosition;
         this.collectedCoins = collectedCoins;
+        this.collected = null;
+        this.coinCount = 0;
+        this.tileDelta = null;
+        this.generator = WorldGenerator.Kind.ROOMS;
+        this.depth = 0;
+        this.otherLevels = null;
     }
 
     public long getSeed() {
         return seed;
     }
 
+    /**
+     * @return the generator that makes this save's world from its seed
+     */
+    public WorldGenerator.Kind getGenerator() {
+        return generator != null ? generator : WorldGenerator.Kind.ROOMS;
+    }
+
+    /**
+     * @return the level the avatar is on, 0 for the top
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the changed levels other than the current one, by depth in depth order
+     */
+    public Map<Integer, LevelState> getOtherLevels() {
+        return otherLevels != null ? Collections.unmodifiableMap(otherLevels) : Map.of();
+    }
+
     public Point getAvatarPosition() {
         return avatarPosition;
     }
 
-    public List<Point> getCollectedCoins() {
-        return collectedCoins;
+    /**
+     * @return true if this state came from a legacy save that lists coins by position
+     */
+    public boolean isLegacy() {
+        return collected == null;
+    }
+
+    /**
+     * @return the collected-coin bitset as saved, or null for saves that list coins by
+     *         position
+     */
+    public BitSet getCollected() {
+        return collected;
+    }
+
+    /**
+     * Returns the collected coins as a bitset over coin ordinals, converting a legacy
+     * position list using the world generated from this state's seed.
+     */
+    public BitSet getCollectedCoins(World world) {
+        if (collected != null) {
+            return (BitSet) collected.clone();
+        }
+        BitSet bits = new BitSet(world.getCoinCount());
+        for (Point p : collectedCoins) {
+            int ordinal = world.getCoinOrdinal(p.x, p.y);
+            if (ordinal >= 0) {
+                bits.set(ordinal);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @return the number of coins collected
+     */
+    public int getCollectedCount() {
+        return collected != null ? collected.cardinality() : collectedCoins.size();
+    }
+
+    /**
+     * @return the number of coins in the world, or 0 if unknown (legacy saves)
+     */
+    public int getCoinCount() {
+        return coinCount;
+    }
+
+    /**
+     * @return the encoded TileDelta, or null for legacy saves
+     */
+    public byte[] getTileDelta() {
+        return tileDelta;
     }
 }
@@ -0,0 +1,29 @@
+package core;
+
+/**
+ * Something that shows the game while it is being played: the StdDraw window
+ * (GameRenderer) or a text terminal (TerminalView). The simulation calls publish() from
+ * its own thread whenever the visible state changes.
+ */
+interface GameView {
+    void start();
+
+    /**
+     * Copies the given state and arranges for it to be shown. The tiles are kept as a
+     * snapshot, so the caller may go on changing world.
+     * @param visibility the line-of-sight mask, or null when LOS is off
+     * @param status transient HUD message such as a save result, empty if none
+     */
+    void publish(TileGrid world, boolean[][] visibility, int ax, int ay, int coins, int total,
+                 String status);
+
+    /**
+     * Shows or hides the performance overlay.
+     */
+    void toggleMetricsOverlay();
+
+    /**
+     * Stops drawing. After this returns the caller may draw to the screen itself.
+     */
+    void stop();
+}
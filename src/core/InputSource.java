@@ -0,0 +1,18 @@
+package core;
+
+/**
+ * Where the game reads keystrokes from: the StdDraw window, a terminal, or a replayed
+ * input string. Implementations never block in hasNextKey().
+ */
+interface InputSource {
+    /**
+     * @return true if a key is waiting to be read
+     */
+    boolean hasNextKey();
+
+    /**
+     * Returns the next waiting key. Only call after hasNextKey() returned true.
+     * @return the next key typed
+     */
+    char nextKey();
+}
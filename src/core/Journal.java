@@ -0,0 +1,178 @@
+package core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+
+/**
+ * Append-only log of every move the player makes, so a crash loses at most the last
+ * fraction of a second of play instead of everything since the last save.
+ *
+ * The journal file starts with a header (magic "BYWJ", version, seed, journal id) and then
+ * holds one byte per accepted move, taking the stairs included. Moves are buffered and flushed in batches, at most
+ * every FLUSH_EVERY moves or FLUSH_NANOS, so the cost per move is a byte copy into a buffer.
+ *
+ * Every SNAPSHOT_EVERY moves the game writes a snapshot: a normal SaveCodec save prefixed
+ * by the journal id and the number of journal moves it includes (see snapshotBytes).
+ * Recovery loads the snapshot and replays only the moves recorded after it. The id ties a
+ * snapshot to its journal, so a crash between starting a new journal and writing its first
+ * snapshot can never replay one game's moves onto another.
+ *
+ * A recovered game starts a fresh journal from its own snapshot, so a journal is never
+ * appended to after a crash left its tail in an unknown state.
+ */
+class Journal implements Closeable {
+    static final int SNAPSHOT_EVERY = 256;
+
+    private static final int MAGIC = 0x4259574A;
+    private static final int SNAPSHOT_MAGIC = 0x42595753;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 1 + 8 + 8;
+    private static final int FLUSH_EVERY = 64;
+    private static final long FLUSH_NANOS = 500_000_000L;
+
+    /** What recover() found: the snapshot state and the moves made after it. */
+    record Recovery(GameState snapshot, char[] tail) {
+    }
+
+    private final BufferedOutputStream out;
+    private final long id;
+    private long moves;
+    private int unflushed;
+    private long lastFlush = System.nanoTime();
+
+    private Journal(BufferedOutputStream out, long id) {
+        this.out = out;
+        this.id = id;
+    }
+
+    /**
+     * Starts a new, empty journal for a game with the given seed, replacing any old one.
+     * Write a snapshot of the starting state with snapshotBytes() right after this.
+     */
+    static Journal create(Path path, long seed) throws IOException {
+        long id = new SecureRandom().nextLong();
+        BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(path.toFile(), false), 4096);
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeLong(seed);
+        header.writeLong(id);
+        header.flush();
+        return new Journal(out, id);
+    }
+
+    /**
+     * Records one accepted move. Flushes to the OS when a batch is full or old enough.
+     */
+    void record(char move) throws IOException {
+        out.write(move);
+        moves++;
+        unflushed++;
+        if (unflushed >= FLUSH_EVERY || System.nanoTime() - lastFlush > FLUSH_NANOS) {
+            flush();
+        }
+    }
+
+    /**
+     * Flushes a pending batch if it has been waiting longer than the flush interval. Call
+     * once per tick so moves made just before the player stops still reach the disk.
+     */
+    void flushIfStale() throws IOException {
+        if (unflushed > 0 && System.nanoTime() - lastFlush > FLUSH_NANOS) {
+            flush();
+        }
+    }
+
+    void flush() throws IOException {
+        out.flush();
+        unflushed = 0;
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * @return number of moves recorded in this journal
+     */
+    long moves() {
+        return moves;
+    }
+
+    /**
+     * @return true if a snapshot should be taken now
+     */
+    boolean snapshotDue() {
+        return moves % SNAPSHOT_EVERY == 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Builds the contents of a snapshot file for a game state that includes every move
+     * recorded so far.
+     */
+    byte[] snapshotBytes(GameState state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream data = new DataOutputStream(bytes);
+        try {
+            data.writeInt(SNAPSHOT_MAGIC);
+            data.writeLong(id);
+            data.writeLong(moves);
+            SaveCodec.write(state, data);
+        } catch (IOException e) {
+            throw new AssertionError("ByteArrayOutputStream does not throw", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the snapshot and the journal moves recorded after it.
+     * @throws IOException if either file is missing, corrupt, or they belong to different games
+     */
+    static Recovery recover(Path journalPath, Path snapshotPath) throws IOException {
+        GameState snapshot;
+        long snapshotId;
+        long snapshotMoves;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshotPath))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a journal snapshot");
+            }
+            snapshotId = in.readLong();
+            snapshotMoves = in.readLong();
+            snapshot = SaveCodec.read(in);
+        }
+
+        byte[] journal = Files.readAllBytes(journalPath);
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(journal));
+        try {
+            if (header.readInt() != MAGIC || header.readUnsignedByte() != VERSION) {
+                throw new IOException("Not a journal");
+            }
+            if (header.readLong() != snapshot.getSeed() || header.readLong() != snapshotId) {
+                throw new IOException("Journal and snapshot are from different games");
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated journal", e);
+        }
+
+        // If the snapshot got further than the journal's last flush, it already holds
+        // everything the journal could offer.
+        int from = (int) Math.min(journal.length, HEADER_BYTES + snapshotMoves);
+        char[] tail = new char[journal.length - from];
+        for (int i = 0; i < tail.length; i++) {
+            tail[i] = (char) journal[from + i];
+        }
+        return new Recovery(snapshot, tail);
+    }
+}
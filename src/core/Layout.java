@@ -0,0 +1,343 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+/**
+ * The rooms and hallways of a world under construction, carved into its tile grid as they
+ * are added. A WorldGenerator fills one in; World then draws the walls around it and places
+ * coins on its floor.
+ *
+ * A room is given by its outer rectangle; its floor is the inside of that rectangle, one
+ * tile in from each side, and walls end up on the rectangle's edge. Rooms are numbered in
+ * the order they were added.
+ *
+ * Generators that don't think in rooms, like the outdoor one, paint tiles directly instead:
+ * setTile() for anything, addGround() for walkable ground that coins may be placed on. They
+ * are responsible for closing off their own ground; walls are only drawn around rooms and
+ * hallways.
+ */
+public final class Layout {
+    private final TETile[][] world;
+    private final int width;
+    private final int height;
+    private final List<Room> rooms = new ArrayList<>();
+    private final List<Hallway> hallways = new ArrayList<>();
+    private int extraRooms = 0;
+    // Cells (x * height + y) painted with addGround().
+    private int[] ground = new int[0];
+    private int groundCount = 0;
+
+    Layout(TETile[][] world) {
+        this.world = world;
+        this.width = world.length;
+        this.height = world[0].length;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * @return true if a room with the given rectangle would keep at least one tile clear of
+     *         every room added so far
+     */
+    public boolean fits(int x, int y, int w, int h) {
+        Room candidate = new Room(x, y, w, h);
+        for (Room existing : rooms) {
+            if (candidate.overlaps(existing)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Carves a room with the given outer rectangle.
+     * @return the room's number
+     */
+    public int addRoom(int x, int y, int w, int h) {
+        Room r = new Room(x, y, w, h);
+        rooms.add(r);
+        r.carve(world);
+        return rooms.size() - 1;
+    }
+
+    /**
+     * Records that the last room added was an extra one, placed to raise the fill ratio
+     * rather than as part of the generator's first pass.
+     */
+    public void markExtraRoom() {
+        extraRooms++;
+    }
+
+    /**
+     * Carves an L-shaped hallway between a random floor tile of each room.
+     */
+    public void connect(int a, int b, Random random) {
+        Point p1 = rooms.get(a).randomPoint(random);
+        Point p2 = rooms.get(b).randomPoint(random);
+        Hallway h = Hallway.buildLShaped(p1, p2, random.nextBoolean());
+        hallways.add(h);
+        h.carve(world);
+    }
+
+    /**
+     * Puts a tile on the map, with no other bookkeeping.
+     */
+    public void setTile(int x, int y, TETile tile) {
+        world[x][y] = tile;
+    }
+
+    /**
+     * Puts a walkable ground tile (see Rules.isGround) on the map and makes it a place coins
+     * can go.
+     */
+    public void addGround(int x, int y, TETile tile) {
+        if (groundCount == ground.length) {
+            ground = Arrays.copyOf(ground, Math.max(1024, groundCount * 2));
+        }
+        ground[groundCount++] = x * height + y;
+        world[x][y] = tile;
+    }
+
+    /**
+     * @return the cells (x * height + y) given to addGround(), in the order they were added
+     */
+    int[] groundCells() {
+        return Arrays.copyOf(ground, groundCount);
+    }
+
+    public int roomCount() {
+        return rooms.size();
+    }
+
+    public int extraRoomCount() {
+        return extraRooms;
+    }
+
+    public int centerX(int room) {
+        return rooms.get(room).centerX();
+    }
+
+    public int centerY(int room) {
+        return rooms.get(room).centerY();
+    }
+
+    /**
+     * @return total length of all hallways, in tiles (tiles shared with rooms included)
+     */
+    public int hallwayLength() {
+        int length = 0;
+        for (Hallway h : hallways) {
+            length += h.getPath().size();
+        }
+        return length;
+    }
+
+    /**
+     * @return room and hallway floor tiles (overlaps counted twice) and ground tiles over
+     *         the area of the map
+     */
+    public double fillRatio() {
+        int floorCount = groundCount;
+        for (Room r : rooms) {
+            floorCount += r.floorArea();
+        }
+        return (double) (floorCount + hallwayLength()) / (width * height);
+    }
+
+    /**
+     * Lists the floor tiles as x and y pairs: each room's in the order the rooms were added,
+     * then each hallway's from end to end. A tile shared by several of them is listed once
+     * for each.
+     */
+    int[][] floorTiles() {
+        List<Point> floors = new ArrayList<>();
+        for (Room r : rooms) {
+            floors.addAll(r.floorTiles());
+        }
+        for (Hallway h : hallways) {
+            floors.addAll(h.getPath());
+        }
+        int[][] tiles = new int[floors.size()][];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new int[]{floors.get(i).getX(), floors.get(i).getY()};
+        }
+        return tiles;
+    }
+
+    /**
+     * Puts walls on every empty tile next to a room or hallway floor tile.
+     */
+    void drawWalls() {
+        Set<Point> floors = new HashSet<>();
+        for (Room r : rooms) {
+            floors.addAll(r.floorTiles());
+        }
+        for (Hallway h : hallways) {
+            floors.addAll(h.getPath());
+        }
+        for (Point p : floors) {
+            for (Point n : p.neighbors()) {
+                if (inBounds(n) && world[n.getX()][n.getY()] == Tileset.NOTHING) {
+                    world[n.getX()][n.getY()] = Tileset.WALL;
+                }
+            }
+        }
+    }
+
+    private boolean inBounds(Point p) {
+        return p.getX() >= 0 && p.getX() < width && p.getY() >= 0 && p.getY() < height;
+    }
+
+    // --- Nested helper classes ---
+
+    private static class Room {
+        private final int x;
+        private final int y;
+        private final int width;
+        private final int height;
+
+        Room(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+        boolean overlaps(Room o) {
+            return (x - 1 < o.x + o.width + 1 && x + width + 1 > o.x - 1
+                    &&
+                    y - 1 < o.y + o.height + 1 && y + height + 1 > o.y - 1);
+        }
+        int floorArea() {
+            return Math.max(0, width - 2) * Math.max(0, height - 2);
+        }
+        List<Point> floorTiles() {
+            List<Point> list = new ArrayList<>();
+            for (int i = x + 1; i < x + width - 1; i++) {
+                for (int j = y + 1; j < y + height - 1; j++) {
+                    list.add(new Point(i, j));
+                }
+            }
+            return list;
+        }
+        Point randomPoint(Random rand) {
+            int px = rand.nextInt(width - 2) + x + 1;
+            int py = rand.nextInt(height - 2) + y + 1;
+            return new Point(px, py);
+        }
+        void carve(TETile[][] world) {
+            for (Point p : floorTiles()) {
+                world[p.getX()][p.getY()] = Tileset.FLOOR;
+            }
+        }
+
+        int centerX() {
+            return x + width / 2;
+        }
+
+        int centerY() {
+            return y + height / 2;
+        }
+
+    }
+
+    private static class Hallway {
+        private final List<Point> path;
+        private Hallway(List<Point> path) {
+            this.path = path;
+        }
+
+        static Hallway buildLShaped(Point p1, Point p2, boolean horizontalFirst) {
+            List<Point> pts = new ArrayList<>();
+            pts.add(p1);
+            if (horizontalFirst) {
+                int dx = Integer.signum(p2.getX() - p1.getX());
+                int x = p1.getX();
+                while (x != p2.getX()) {
+                    x += dx;
+                    pts.add(new Point(x, p1.getY()));
+                }
+                int dy = Integer.signum(p2.getY() - p1.getY());
+                int y = p1.getY();
+                while (y != p2.getY()) {
+                    y += dy;
+                    pts.add(new Point(p2.getX(), y));
+                }
+            } else {
+                int dy = Integer.signum(p2.getY() - p1.getY());
+                int y = p1.getY();
+                while (y != p2.getY()) {
+                    y += dy;
+                    pts.add(new Point(p1.getX(), y));
+                }
+                int dx = Integer.signum(p2.getX() - p1.getX());
+                int x = p1.getX();
+                while (x != p2.getX()) {
+                    x += dx;
+                    pts.add(new Point(x, p2.getY()));
+                }
+            }
+            return new Hallway(pts);
+        }
+        void carve(TETile[][] world) {
+            for (Point p : path) {
+                world[p.getX()][p.getY()] = Tileset.FLOOR;
+            }
+        }
+        List<Point> getPath() {
+            return path;
+        }
+
+    }
+
+    private static class Point {
+        private final int x;
+        private final int y;
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        int getX() {
+            return x;
+        }
+
+        int getY() {
+            return y;
+        }
+
+        List<Point> neighbors() {
+            return Arrays.asList(
+                    new Point(x + 1, y), new Point(x - 1, y),
+                    new Point(x, y + 1), new Point(x, y - 1)
+            );
+        }
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Point)) {
+                return false;
+            }
+            Point p = (Point) o;
+            return p.x == x && p.y == y;
+        }
+        @Override public int hashCode() {
+            return Objects.hash(x, y);
+        }
+    }
+}
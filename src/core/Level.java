@@ -0,0 +1,222 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * One level of a Dungeon: the world generated for its depth, the stairs added to it, and
+ * the coins collected on it so far.
+ *
+ * Every level has stairs down on a random ground tile. Levels below the top also have
+ * stairs up, on the tile where a new game would start; the top level has none, since
+ * that is where games do start. Coins are placed before the stairs, so they never share
+ * a tile.
+ */
+final class Level {
+    // With -Dbyow.validateWorlds=true every new world is checked and problems are logged.
+    private static final boolean VALIDATE_WORLDS = Boolean.getBoolean("byow.validateWorlds");
+    private static final ThreadLocal<WorldValidator> VALIDATOR = ThreadLocal.withInitial(WorldValidator::new);
+
+    private final int depth;
+    private final World worldGen;
+    // The live tiles, shared with worldGen for line of sight and with the pathfinder.
+    private final TETile[][] world;
+    // The same tiles again, kept in step with world, for cheap snapshots.
+    private final TileGrid tiles;
+    // A snapshot of the level as generated, before any moves; saves store changes against it.
+    private final TileGrid baseline;
+    // Bit i is set once coin i (World.getCoinOrdinal) has been collected.
+    private final BitSet collected;
+    private final Point up;
+    private final Point down;
+    // Created on the first auto-walk request, then kept up to date as coins are collected.
+    private Pathfinder pathfinder;
+
+    private Level(int depth, World worldGen, TETile[][] world, Point up, Point down) {
+        this.depth = depth;
+        this.worldGen = worldGen;
+        this.world = world;
+        this.tiles = TileGrid.of(world);
+        this.baseline = tiles.snapshot();
+        this.collected = new BitSet(worldGen.getCoinCount());
+        this.up = up;
+        this.down = down;
+    }
+
+    // A copy of other that shares nothing play changes.
+    private Level(Level other) {
+        this.depth = other.depth;
+        this.world = TETile.copyOf(other.world);
+        this.worldGen = other.worldGen.copyOnto(world);
+        this.tiles = other.tiles.snapshot();
+        this.baseline = other.baseline;
+        this.collected = (BitSet) other.collected.clone();
+        this.up = other.up;
+        this.down = other.down;
+    }
+
+    /**
+     * Generates the level at the given depth of the dungeon for seed. The result depends on
+     * nothing else, so any thread may call this.
+     */
+    static Level generate(int width, int height, long seed, WorldGenerator.Kind generator, int depth) {
+        long levelSeed = Dungeon.levelSeed(seed, depth);
+        World worldGen = new World(width, height, levelSeed, generator);
+        TETile[][] world = worldGen.generate();
+        if (VALIDATE_WORLDS) {
+            WorldValidator.Report report = VALIDATOR.get().validate(world, worldGen.getCoinCount());
+            if (!report.ok()) {
+                System.err.println("World for seed " + seed + " depth " + depth + " failed validation: " + report);
+            }
+        }
+
+        Point start = Rules.findStartingPosition(world);
+        Point up = null;
+        if (depth > 0) {
+            up = start;
+            world[up.x][up.y] = Tileset.STAIRS_UP;
+        }
+        // Stairs down go on the k-th remaining ground tile, k drawn from the level's seed.
+        // The start tile is skipped even on the top level, so a game never begins on them.
+        int candidates = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                if (Rules.isGround(world[x][y]) && (x != start.x || y != start.y)) {
+                    candidates++;
+                }
+            }
+        }
+        if (candidates == 0) {
+            throw new RuntimeException("No ground tile found for stairs");
+        }
+        int k = new Random(levelSeed).nextInt(candidates);
+        Point down = null;
+        for (int x = 0; x < width && down == null; x++) {
+            for (int y = 0; y < height; y++) {
+                if (Rules.isGround(world[x][y]) && (x != start.x || y != start.y) && k-- == 0) {
+                    down = new Point(x, y);
+                    break;
+                }
+            }
+        }
+        world[down.x][down.y] = Tileset.STAIRS_DOWN;
+        return new Level(depth, worldGen, world, up, down);
+    }
+
+    /**
+     * Puts back the changes a save recorded for this level, which must be fresh from
+     * generate().
+     * @param coins the collected coins
+     * @param delta the changed tiles from TileDelta.encode
+     * @throws IOException if the delta is corrupt
+     */
+    void restore(BitSet coins, byte[] delta) throws IOException {
+        TileDiff diff = TileDelta.decode(delta, tiles.width(), tiles.height());
+        diff.applyTo(tiles);
+        diff.applyTo(world);
+        collected.or(coins);
+        for (int i = coins.nextSetBit(0); i >= 0; i = coins.nextSetBit(i + 1)) {
+            worldGen.getEntities().remove(SpatialIndex.Type.COIN, worldGen.getCoinX(i), worldGen.getCoinY(i));
+        }
+    }
+
+    /**
+     * Returns a copy of this level, in its current state, that can be played without
+     * changing this one. The tiles are a TileGrid snapshot, so copies of a level that is
+     * left alone cost little more than its world array.
+     */
+    Level copy() {
+        return new Level(this);
+    }
+
+    /**
+     * Collects the coin at (x, y), leaving the ground it was placed on.
+     */
+    void collectCoin(int x, int y) {
+        int ordinal = worldGen.getCoinOrdinal(x, y);
+        collected.set(ordinal);
+        setTile(x, y, worldGen.getCoinGround(ordinal));
+        worldGen.getEntities().remove(SpatialIndex.Type.COIN, x, y);
+        if (pathfinder != null && pathfinder.hasCoinField()) {
+            pathfinder.removeCoin(ordinal, x, y);
+        }
+    }
+
+    private void setTile(int x, int y, TETile tile) {
+        world[x][y] = tile;
+        tiles.set(x, y, tile);
+    }
+
+    /**
+     * @return true if anything differs from the level as generated; collecting coins is
+     *         the only way to change a level
+     */
+    boolean isChanged() {
+        return !collected.isEmpty();
+    }
+
+    /**
+     * @return the tiles that differ from the level as generated
+     */
+    TileDiff changes() {
+        return TileDiff.between(baseline, tiles);
+    }
+
+    /**
+     * Snapshots what a save needs to rebuild this level from its seed.
+     */
+    GameState.LevelState toState() {
+        return new GameState.LevelState((BitSet) collected.clone(), worldGen.getCoinCount(),
+                TileDelta.encode(changes()));
+    }
+
+    Pathfinder pathfinder() {
+        if (pathfinder == null) {
+            pathfinder = new Pathfinder(world);
+        }
+        return pathfinder;
+    }
+
+    int getDepth() {
+        return depth;
+    }
+
+    World getWorldGen() {
+        return worldGen;
+    }
+
+    TETile[][] getWorld() {
+        return world;
+    }
+
+    /**
+     * @return the live tiles as a TileGrid, to take snapshots of
+     */
+    TileGrid getTiles() {
+        return tiles;
+    }
+
+    BitSet getCollected() {
+        return collected;
+    }
+
+    int getCoinsCollected() {
+        return collected.cardinality();
+    }
+
+    /**
+     * @return where the stairs up are, or null on the top level
+     */
+    Point getStairsUp() {
+        return up;
+    }
+
+    Point getStairsDown() {
+        return down;
+    }
+}
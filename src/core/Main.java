@@ -3,31 +3,110 @@ package core;
 import tileengine.TERenderer;
 import tileengine.TETile;
 import edu.princeton.cs.algs4.StdDraw;
-import tileengine.Tileset;
+import utils.FrameLimiter;
+
 import java.awt.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Main {
-    private static final int WIDTH = 80;
-    private static final int HEIGHT = 30;
+    private static final int WIDTH = GameSession.WIDTH;
+    private static final int HEIGHT = GameSession.HEIGHT;
     private static final String SAVE_FILE = "save.txt";
 
     private static final String SAVE_FILE_PREFIX = "save_slot_";
-    private static final int MAX_SLOTS = 3;
+    // Slots 1-9 can be saved to directly with a number key; the index tracks up to
+    // SLOT_CAPACITY slots, and :n saves to the first free one.
+    private static final int MAX_SLOTS = 9;
+    private static final int SLOT_CAPACITY = 256;
+    private static final int SLOTS_PER_PAGE = 9;
+    private static final String SLOT_INDEX_FILE = "save_index.dat";
+    private static final DateTimeFormatter SLOT_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+    private static SlotIndex slotIndex;
+
+    // Game loop tick rate, and how long menus sleep between checks for a key.
+    private static final int TICKS_PER_SECOND = 30;
+    private static final int RENDER_FPS = 60;
+    private static final int IDLE_POLL_MS = 20;
+
+    // When set (-Dbyow.coalesceMoves=true), repeats of the same movement key that queued up
+    // within one tick collapse into a single step, so key auto-repeat can't run the avatar
+    // past where the player let go.
+    private static final boolean COALESCE_MOVES = Boolean.getBoolean("byow.coalesceMoves");
+
+    // Saves made during play are written in the background; their results are shown in
+    // the HUD for a few seconds.
+    private static final SaveWriter SAVE_WRITER = new SaveWriter();
+    private static final long STATUS_NANOS = 3_000_000_000L;
+    private static String statusMessage = "";
+    private static long statusExpiresAt = 0;
+
+    // With -Dbyow.journal=true every move is logged so a crashed game can be recovered
+    // from the main menu; see Journal.
+    private static final boolean JOURNAL_ENABLED = Boolean.getBoolean("byow.journal");
+    private static final String JOURNAL_FILE = "journal.dat";
+    private static final String JOURNAL_SNAPSHOT_FILE = "journal_snapshot.dat";
+    private static Journal journal;
+
+    // The game being played; everything about it that gets saved lives here.
+    private static GameSession session;
+    private static WorldGenerator.Kind newGameGenerator = WorldGenerator.Kind.ROOMS;
+
+    // Set by --terminal: play in the terminal with ANSI output and keys from stdin.
+    private static boolean terminalMode = false;
+    private static InputSource input = new InputSource() {
+        @Override
+        public boolean hasNextKey() {
+            return StdDraw.hasNextKeyTyped();
+        }
 
-    private static boolean losEnabled = false;
-    private static int totalCoins = 0;
-    private static int coinsCollected = 0;
-    private static List<Point> collectedPositions = new ArrayList<>();
-    private static int currentSlot = -1;  // -1 means no slot loaded yet
+        @Override
+        public char nextKey() {
+            return StdDraw.nextKeyTyped();
+        }
+    };
 
     public static void main(String[] args) {
+        GameMetrics.exportOnExit();
+        if (args.length > 0 && args[0].equals("--server")) {
+            try {
+                GameServer.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                System.err.println("Cannot start server: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--terminal")) {
+            terminalMode = true;
+            input = new StreamInput(System.in);
+            TerminalView.enableRawMode();
+        }
+        try {
+            slotIndex = SlotIndex.open(Paths.get(SLOT_INDEX_FILE), SLOT_CAPACITY, Main::readSlotSummary);
+        } catch (IOException e) {
+            System.err.println("Slot index unavailable: " + e.getMessage());
+        }
         showMainMenu();
     }
 
     private static void showMainMenu() {
+        boolean canRecover = JOURNAL_ENABLED && Files.exists(Paths.get(JOURNAL_FILE));
+        if (terminalMode) {
+            printScreen("CS61B: BYOW", "", "(N) New Game", "(L) Load Game", "(P) Load from Slot", "(Q) Quit",
+                    canRecover ? "(R) Recover Journal" : "");
+            menuChoice();
+            return;
+        }
         StdDraw.setCanvasSize(WIDTH * 8 * 2, HEIGHT * 8 * 2);
         StdDraw.setXscale(0, WIDTH);
         StdDraw.setYscale(0, HEIGHT);
@@ -36,253 +115,508 @@ public class Main {
         TERenderer ter = new TERenderer();
         ter.initialize(WIDTH, HEIGHT);
 
-        while (true) {
-            StdDraw.clear(StdDraw.BLACK);
+        StdDraw.clear(StdDraw.BLACK);
 
-            StdDraw.setPenColor(StdDraw.WHITE);
-            StdDraw.text((double) WIDTH / 2, (double) (HEIGHT * 2) / 3, "CS61B: BYOW");
+        StdDraw.setPenColor(StdDraw.WHITE);
+        StdDraw.text((double) WIDTH / 2, (double) (HEIGHT * 2) / 3, "CS61B: BYOW");
+
+        StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2, "(N) New Game");
+        StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2 - 2, "(L) Load Game");
+        StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2 - 4, "(P) Load from Slot");
+        StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2 - 6, "(Q) Quit");
+        if (canRecover) {
+            StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2 - 8, "(R) Recover Journal");
+        }
 
-            StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2, "(N) New Game");
-            StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2 - 2, "(L) Load Game");
-            StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2 - 4, "(P) Load from Slot");
-            StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2 - 6, "(Q) Quit");
+        StdDraw.show();
 
-            StdDraw.show();
+        menuChoice();
+    }
 
-            if (StdDraw.hasNextKeyTyped()) {
-                char c = Character.toLowerCase(StdDraw.nextKeyTyped());
-                if (c == 'n') {
-                    long seed = getSeedFromUser();
-                    startNewGame(seed);
-                    break;
-                } else if (c == 'l') {
-                    loadGame();
-                    return;
-                } else if(c == 'p') {
-                    loadFromSlotMenu();
-                    return;
-                }else if (c == 'q') {
-                    System.exit(0);
-                }
+    private static void menuChoice() {
+        while (true) {
+            char c = Character.toLowerCase(waitForKey());
+            if (c == 'n') {
+                long seed = getSeedFromUser();
+                startNewGame(seed, newGameGenerator);
+                break;
+            } else if (c == 'l') {
+                loadGame();
+                return;
+            } else if(c == 'p') {
+                loadFromSlotMenu();
+                return;
+            }else if (c == 'q') {
+                System.exit(0);
+            } else if (c == 'r' && JOURNAL_ENABLED) {
+                recoverJournal();
+                return;
+            }
+        }
+    }
+
+    // Blocks until a key is typed. The menus only change in response to a key, so there is
+    // nothing to redraw while we wait and the thread can sleep between checks.
+    private static char waitForKey() {
+        while (!input.hasNextKey()) {
+            if (input instanceof StreamInput in && in.isClosed()) {
+                System.exit(0);
+            }
+            try {
+                Thread.sleep(IDLE_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
+        return input.nextKey();
     }
 
+    // Terminal-mode stand-in for the StdDraw menu screens: clears the terminal and prints
+    // the lines top to bottom.
+    private static void printScreen(String... lines) {
+        StringBuilder sb = new StringBuilder("\u001b[0m\u001b[2J\u001b[H");
+        for (String line : lines) {
+            sb.append(line).append("\r\n");
+        }
+        System.out.print(sb);
+        System.out.flush();
+    }
+
+    // Reads a seed. S starts the usual room layout, B the BSP one and O an outdoor world;
+    // the choice is left in newGameGenerator.
     private static long getSeedFromUser() {
         StringBuilder seedInput = new StringBuilder();
 
         while (true) {
-            StdDraw.clear(StdDraw.BLACK);
-            StdDraw.text((double) WIDTH / 2, (double) (HEIGHT * 2) / 3, "Enter Seed, Then Press S to Start: ");
-            StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2, seedInput.toString());
-            StdDraw.show();
+            if (terminalMode) {
+                printScreen("Enter Seed, Then Press S to Start: ", seedInput.toString(), "",
+                        "(B for a BSP layout, O for outdoors)");
+            } else {
+                StdDraw.clear(StdDraw.BLACK);
+                StdDraw.text((double) WIDTH / 2, (double) (HEIGHT * 2) / 3, "Enter Seed, Then Press S to Start: ");
+                StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 2, seedInput.toString());
+                StdDraw.text((double) WIDTH / 2, (double) HEIGHT / 3, "(B for a BSP layout, O for outdoors)");
+                StdDraw.show();
+            }
 
-            if (StdDraw.hasNextKeyTyped()) {
-                char c = StdDraw.nextKeyTyped();
-                if (Character.isDigit(c)) {
-                    seedInput.append(c);
-                } else if (c == 's' || c == 'S') {
-                    if (seedInput.length() > 0) {
-                        return Long.parseLong(seedInput.toString());
-                    }
-                }
+            char c = Character.toLowerCase(waitForKey());
+            if (Character.isDigit(c)) {
+                seedInput.append(c);
+            } else if ((c == 's' || c == 'b' || c == 'o') && seedInput.length() > 0) {
+                newGameGenerator = c == 'b' ? WorldGenerator.Kind.BSP
+                        : c == 'o' ? WorldGenerator.Kind.OUTDOOR : WorldGenerator.Kind.ROOMS;
+                return Long.parseLong(seedInput.toString());
             }
         }
     }
 
     private static int slotInputMenu() {
-        while (true) {
+        if (terminalMode) {
+            printScreen("Select Slot (1-" + MAX_SLOTS + "):");
+        } else {
             StdDraw.clear(StdDraw.BLACK);
             StdDraw.setPenColor(StdDraw.WHITE);
             StdDraw.text(WIDTH / 2, HEIGHT / 2, "Select Slot (1-" + MAX_SLOTS + "):");
             StdDraw.show();
-            if (StdDraw.hasNextKeyTyped()) {
-                char c = StdDraw.nextKeyTyped();
-                if (c >= '1' && c <= '0' + MAX_SLOTS) {
-                    return c - '0';
-                }
+        }
+        while (true) {
+            char c = waitForKey();
+            if (c >= '1' && c <= '0' + MAX_SLOTS) {
+                return c - '0';
             }
         }
     }
 
     private static GameState loadStateFromSlot(int slot) {
-        currentSlot = slot;
-        try (ObjectInputStream ois = new ObjectInputStream(
-                new FileInputStream(SAVE_FILE_PREFIX + slot + ".dat"))) {
-            GameState state = (GameState) ois.readObject();
+        try {
+            GameState state = SaveCodec.readFile(SAVE_FILE_PREFIX + slot + ".dat");
             System.err.println("[Slot " + slot + "] Loaded seed: " + state.getSeed()
-                    + "avatar:" + state.getAvatarPosition() + "coins:" + state.getCollectedCoins().size());
+                    + "avatar:" + state.getAvatarPosition() + "coins:" + state.getCollectedCount());
             return state;
         } catch (Exception e) {
             throw new RuntimeException("Cannot load slot " + slot, e);
         }
     }
 
+    // Lists saved slots a page at a time using only the slot index, so no save is opened
+    // until the player picks one.
     private static void loadFromSlotMenu() {
-        while (true) {
-            StdDraw.clear(StdDraw.BLACK);
-            StdDraw.setPenColor(StdDraw.WHITE);
-            StdDraw.text(WIDTH / 2, HEIGHT / 2 + 2, "Load From Slot");
-            StdDraw.text(WIDTH / 2, HEIGHT / 2, "Press 1, 2, or 3 to load a save slot");
-            StdDraw.text(WIDTH / 2, HEIGHT / 2 - 2, "Press B to go back");
-            StdDraw.show();
+        List<SlotIndex.Entry> saves = slotIndex == null ? List.of() : slotIndex.used();
+        int pages = Math.max(1, (saves.size() + SLOTS_PER_PAGE - 1) / SLOTS_PER_PAGE);
+        int page = 0;
 
-            if (StdDraw.hasNextKeyTyped()) {
-                char c = StdDraw.nextKeyTyped();
-                if (c >= '1' && c <= '0' + MAX_SLOTS) {
-                    int slot = c - '0';
-                    try {
-                        GameState state = loadStateFromSlot(slot);
-                        startLoadedGame(state);
-                        return;
-                    } catch (Exception e) {
-                        System.out.println("Failed to load slot " + slot);
-                    }
-                } else if (c == 'b' || c == 'B') {
+        while (true) {
+            int first = page * SLOTS_PER_PAGE;
+            int last = Math.min(saves.size(), first + SLOTS_PER_PAGE);
+            List<String> lines = new ArrayList<>();
+            lines.add("Load From Slot (page " + (page + 1) + "/" + pages + ")");
+            lines.add("");
+            for (int i = first; i < last; i++) {
+                lines.add("(" + (i - first + 1) + ") " + describeSlot(saves.get(i)));
+            }
+            if (saves.isEmpty()) {
+                lines.add("No saved games");
+            }
+            lines.add("");
+            lines.add("N/P for next/previous page, B to go back");
+            showLines(lines);
+
+            char c = Character.toLowerCase(waitForKey());
+            if (c >= '1' && c <= '9' && first + (c - '1') < last) {
+                int slot = saves.get(first + (c - '1')).slot();
+                try {
+                    GameState state = loadStateFromSlot(slot);
+                    startLoadedGame(state, slot);
                     return;
+                } catch (Exception e) {
+                    System.out.println("Failed to load slot " + slot);
                 }
+            } else if (c == 'n' && page + 1 < pages) {
+                page++;
+            } else if (c == 'p' && page > 0) {
+                page--;
+            } else if (c == 'b') {
+                return;
             }
         }
     }
 
-    private static void startNewGame(long seed) {
-        System.out.println("Using seed: " + seed);
-        World worldGen = new World(WIDTH, HEIGHT, seed);
-        TETile[][] world = worldGen.generate();
-        currentSlot = -1;
-        totalCoins = worldGen.getCoinCount();
-        coinsCollected = 0;
-        collectedPositions = new ArrayList<>();
+    private static String describeSlot(SlotIndex.Entry e) {
+        String coins = e.totalCoins() > 0 ? e.coinsCollected() + "/" + e.totalCoins() : Integer.toString(e.coinsCollected());
+        return "Slot " + e.slot() + "   seed " + e.seed() + "   coins " + coins + "   "
+                + SLOT_TIME_FORMAT.format(Instant.ofEpochMilli(e.savedAt()));
+    }
 
-        TERenderer ter = new TERenderer();
-        ter.initialize(WIDTH, HEIGHT);
-        ter.renderFrame(world);
+    // Draws a menu screen of centered lines from the top down, or prints it in terminal mode.
+    private static void showLines(List<String> lines) {
+        if (terminalMode) {
+            printScreen(lines.toArray(new String[0]));
+            return;
+        }
+        StdDraw.clear(StdDraw.BLACK);
+        StdDraw.setPenColor(StdDraw.WHITE);
+        for (int i = 0; i < lines.size(); i++) {
+            StdDraw.text((double) WIDTH / 2, HEIGHT - 3 - 2 * i, lines.get(i));
+        }
+        StdDraw.show();
+    }
 
-        Point avatarPos = findStartingPosition(world);
-        playGame(worldGen, world, seed, avatarPos);
+    // Summarizes a slot file for rebuilding the slot index. Returns null for empty slots.
+    private static SlotIndex.Entry readSlotSummary(int slot) {
+        Path path = slotPath(slot);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            GameState state = SaveCodec.readFile(path.toString());
+            return new SlotIndex.Entry(slot, state.getSeed(), state.getCollectedCount(), state.getCoinCount(),
+                    Files.getLastModifiedTime(path).toMillis(), (int) Files.size(path));
+        } catch (IOException e) {
+            return null;
+        }
     }
 
-    private static void startLoadedGame(GameState state) {
-        long seed = state.getSeed();
-        World worldGen = new World(WIDTH, HEIGHT, seed);
-        TETile[][] world = worldGen.generate();
+    private static void startNewGame(long seed, WorldGenerator.Kind generator) {
+        System.out.println("Using seed: " + seed);
+        session = GameSession.newGame(WIDTH, HEIGHT, seed, generator);
 
-        collectedPositions = new ArrayList<>(state.getCollectedCoins());
-        coinsCollected = collectedPositions.size();
-        totalCoins = worldGen.getCoinCount();
-        for (Point p : collectedPositions) {
-            world[p.x][p.y] = Tileset.FLOOR;
+        if (!terminalMode) {
+            TERenderer ter = new TERenderer();
+            ter.initialize(WIDTH, HEIGHT);
+            ter.renderFrame(session.getWorld());
         }
 
-        Point avatarPos = state.getAvatarPosition();
+        playGame();
+    }
 
-        playGame(worldGen, world, seed, avatarPos);
+    private static void startLoadedGame(GameState state, int slot) {
+        startLoadedGame(state, slot, new char[0]);
     }
 
-    private static void playGame(World worldGen, TETile[][] world, long seed, Point avatarPos) {
-        TERenderer ter = new TERenderer();
-        ter.initialize(WIDTH, HEIGHT);
+    // Restores a saved state, then replays the given moves on top of it before play resumes.
+    // If the moves win the game, it is over: the journal they came from goes and the
+    // victory screen shows.
+    private static void startLoadedGame(GameState state, int slot, char[] replay) {
+        try {
+            session = GameSession.restore(WIDTH, HEIGHT, state);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot restore saved world", e);
+        }
+        session.setSlot(slot);
+        for (char c : replay) {
+            if (session.step(c) == GameSession.Event.WON) {
+                deleteJournalFiles();
+                showVictoryScreen();
+                return;
+            }
+        }
+
+        playGame();
+    }
 
+    private static void playGame() {
+        GameView renderer;
+        if (terminalMode) {
+            renderer = new TerminalView(System.out, WIDTH, HEIGHT);
+        } else {
+            TERenderer ter = new TERenderer();
+            ter.initialize(WIDTH, HEIGHT);
+            renderer = new GameRenderer(WIDTH, HEIGHT, RENDER_FPS);
+        }
+        FrameLimiter limiter = new FrameLimiter(TICKS_PER_SECOND);
+        startJournal();
+        renderer.start();
+        boolean won;
+        try {
+            won = simulate(renderer, limiter);
+        } finally {
+            renderer.stop();
+        }
+        if (won) {
+            endJournal();
+            showVictoryScreen();
+        }
+    }
+
+    // Runs the simulation at a fixed tick rate, handing a new frame to the render thread
+    // whenever the visible state changes. Returns true if the game ended in victory.
+    private static boolean simulate(GameView renderer, FrameLimiter limiter) {
+        // Only publish a frame when something on screen changed; an idle player costs one
+        // wakeup per tick.
+        boolean dirty = true;
+        // Clicking a tile auto-walks there; auto-walk takes one step per tick.
+        boolean mouseWasPressed = false;
         while (true) {
-            StdDraw.clear(StdDraw.BLACK);
+            // Drain every key that arrived since the last tick so held keys and fast input
+            // never back up in StdDraw's queue, then draw the result once.
+            char lastMove = 0;
+            int queued = 0;
+            while (input.hasNextKey()) {
+                char c = Character.toLowerCase(input.nextKey());
+                dirty = true;
+                queued++;
+
+                if (!Rules.isMoveKey(c)) {
+                    lastMove = 0;
+                } else if (COALESCE_MOVES && c == lastMove) {
+                    continue;
+                } else {
+                    lastMove = c;
+                }
 
-            if (losEnabled) {
-                worldGen.updateLineOfSight(avatarPos.x, avatarPos.y);
-                boolean[][] visible = worldGen.getVisibility();
-
-                for (int x = 0; x < WIDTH; x++) {
-                    for (int y = 0; y < HEIGHT; y++) {
-                        if (visible[x][y]) {
-                            world[x][y].draw(x, y);
-                        } else {
-                            Tileset.NOTHING.draw(x, y);
-                        }
+                switch (session.step(c)) {
+                    case MOVED, LEVEL_CHANGED -> journalMove(c);
+                    case WON -> {
+                        return true;
                     }
-                }
-            } else {
-                for (int x = 0; x < WIDTH; x++) {
-                    for (int y = 0; y < HEIGHT; y++) {
-                        world[x][y].draw(x, y);
+                    case METRICS_TOGGLED -> renderer.toggleMetricsOverlay();
+                    case SAVE_TO_SLOT -> saveToSlot(session.getRequestedSlot());
+                    case SAVE_AND_QUIT -> saveGame();
+                    case SAVE_TO_SLOT_AND_QUIT -> quit(saveToSlotAndWait(session.getRequestedSlot()));
+                    case SAVE_TO_NEW_SLOT_AND_QUIT -> saveToNewSlotAndQuit();
+                    case COMMAND_CANCELLED -> System.out.println("Invalid input after ':'. Save cancelled.");
+                    default -> {
                     }
                 }
             }
 
-            StdDraw.setPenColor(StdDraw.RED);
-            StdDraw.filledCircle(avatarPos.x + 0.6, avatarPos.y + 0.5, 0.4);
+            if (!terminalMode) {
+                boolean pressed = StdDraw.isMousePressed();
+                if (pressed && !mouseWasPressed) {
+                    session.startAutoWalkTo((int) StdDraw.mouseX(), (int) StdDraw.mouseY());
+                }
+                mouseWasPressed = pressed;
+            }
+            if (session.isAutoWalking()) {
+                dirty = true;
+                GameSession.Event event = session.stepAutoWalk();
+                if (event == GameSession.Event.WON) {
+                    return true;
+                } else if (event == GameSession.Event.MOVED) {
+                    journalMove(session.getLastMove());
+                }
+            }
 
-            StdDraw.setPenColor(StdDraw.WHITE);
-            StdDraw.textLeft(1, HEIGHT - 1, "Coins: " + coinsCollected + "/" + totalCoins + " LOS:" + (losEnabled ? "ON" : "OFF"));
+            if (queued > 0) {
+                GameMetrics.INPUT_QUEUE_DEPTH.record(queued);
+            }
+            GameMetrics.TICKS.increment();
+            if (journal != null) {
+                try {
+                    journal.flushIfStale();
+                } catch (IOException e) {
+                    journalFailed(e);
+                }
+            }
 
-            StdDraw.show();
+            String saveResult = SAVE_WRITER.pollResult();
+            if (saveResult != null) {
+                statusMessage = saveResult;
+                statusExpiresAt = System.nanoTime() + STATUS_NANOS;
+                dirty = true;
+            } else if (!statusMessage.isEmpty() && System.nanoTime() - statusExpiresAt > 0) {
+                statusMessage = "";
+                dirty = true;
+            }
 
-            if (StdDraw.hasNextKeyTyped()) {
-                char c = Character.toLowerCase(StdDraw.nextKeyTyped());
+            if (dirty) {
+                boolean[][] visible = null;
+                if (session.isLosEnabled()) {
+                    long losStart = System.nanoTime();
+                    visible = session.getVisibility();
+                    GameMetrics.LOS_TIME.record(System.nanoTime() - losStart);
+                }
+                renderer.publish(session.getTiles(), visible, session.getAvatarX(), session.getAvatarY(),
+                        session.getCoinsCollected(), session.getTotalCoins(),
+                        GameSession.joinHud(session.hudHint(), statusMessage));
+                dirty = false;
+            }
+            limiter.sync();
+        }
+    }
 
-                if (c == ':') {
-                    if (handleColonCommand(world, seed, avatarPos)) {
-                        return;
-                    }
-                } else if (c >= '1' && c <= '0' + MAX_SLOTS) {
-                    saveToSlot(seed, avatarPos, c - '0');
-                    return;
-                } else if (c == 'o') {
-                    losEnabled = !losEnabled;
-                } else {
-                    int newX = avatarPos.x;
-                    int newY = avatarPos.y;
-                    switch (c) {
-                        case 'w': newY++;
-                        break;
-                        case 'a': newX--;
-                        break;
-                        case 's': newY--;
-                        break;
-                        case 'd': newX++;
-                        break;
-                    }
+    // Starts a fresh journal for this game, beginning with a snapshot of its current state.
+    private static void startJournal() {
+        if (!JOURNAL_ENABLED) {
+            return;
+        }
+        try {
+            journal = Journal.create(Paths.get(JOURNAL_FILE), session.getSeed());
+            byte[] snapshot = journal.snapshotBytes(session.toGameState());
+            SAVE_WRITER.saveAndWait(Paths.get(JOURNAL_SNAPSHOT_FILE), snapshot, null, null);
+        } catch (IOException e) {
+            journalFailed(e);
+        }
+    }
 
-                    if (newX >= 0 && newX < WIDTH && newY >= 0 && newY < HEIGHT && world[newX][newY] != Tileset.WALL) {
-                        if (world[newX][newY] == Tileset.COIN) {
-                            coinsCollected++;
-                            collectedPositions.add(new Point(newX, newY));
-                            world[newX][newY] = Tileset.FLOOR;
-                        }
-                        world[avatarPos.x][avatarPos.y] = Tileset.FLOOR;
-                        avatarPos = new Point(newX, newY);
-
-                        if (coinsCollected >= totalCoins) {
-                            showVictoryScreen();
-                            return;
-                        }
-                    }
-                }
+    private static void journalMove(char move) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.record(move);
+            if (journal.snapshotDue()) {
+                // Flush first so the journal on disk always reaches at least as far as
+                // any snapshot taken from it.
+                journal.flush();
+                byte[] snapshot = journal.snapshotBytes(session.toGameState());
+                SAVE_WRITER.save(Paths.get(JOURNAL_SNAPSHOT_FILE), snapshot, null, null);
             }
-            StdDraw.pause(30);
+        } catch (IOException e) {
+            journalFailed(e);
+        }
+    }
+
+    private static void journalFailed(IOException e) {
+        System.err.println("Journal disabled: " + e.getMessage());
+        statusMessage = "Journal FAILED: " + e.getMessage();
+        statusExpiresAt = System.nanoTime() + STATUS_NANOS;
+        journal = null;
+    }
+
+    // A finished or saved game has nothing to recover.
+    private static void endJournal() {
+        if (journal == null) {
+            return;
         }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close journal: " + e.getMessage());
+        }
+        journal = null;
+        deleteJournalFiles();
+    }
+
+    private static void deleteJournalFiles() {
+        try {
+            Files.deleteIfExists(Paths.get(JOURNAL_FILE));
+            Files.deleteIfExists(Paths.get(JOURNAL_SNAPSHOT_FILE));
+        } catch (IOException e) {
+            System.err.println("Failed to remove journal: " + e.getMessage());
+        }
+    }
+
+    // Exits after a save-and-quit. The journal is kept if the save failed, so the game can
+    // still be recovered from the main menu.
+    private static void quit(boolean saved) {
+        if (saved) {
+            endJournal();
+        }
+        System.exit(0);
+    }
+
+    private static void recoverJournal() {
+        Journal.Recovery recovery;
+        try {
+            recovery = Journal.recover(Paths.get(JOURNAL_FILE), Paths.get(JOURNAL_SNAPSHOT_FILE));
+        } catch (IOException e) {
+            System.err.println("Failed to recover journal: " + e.getMessage());
+            showMainMenu();
+            return;
+        }
+        System.out.println("Recovered journal: replaying " + recovery.tail().length + " moves");
+        startLoadedGame(recovery.snapshot(), -1, recovery.tail());
     }
 
     private static void showVictoryScreen() {
+        if (terminalMode) {
+            printScreen("VICTORY!", "You collected all " + session.getTotalCoins() + " coins!", "Press any key to exit");
+            waitForKey();
+            System.exit(0);
+        }
         StdDraw.clear(StdDraw.BLACK);
         StdDraw.setPenColor(StdDraw.WHITE);
         StdDraw.text(WIDTH/2, HEIGHT/2 + 2, "VICTORY!");
-        StdDraw.text(WIDTH/2, HEIGHT/2, "You collected all " + totalCoins + " coins!");
+        StdDraw.text(WIDTH/2, HEIGHT/2, "You collected all " + session.getTotalCoins() + " coins!");
         StdDraw.text(WIDTH/2, HEIGHT/2 - 2, "Press any key to exit");
         StdDraw.show();
 
-        while (!StdDraw.hasNextKeyTyped()) {
-            StdDraw.pause(100);
-        }
-        StdDraw.nextKeyTyped();
+        waitForKey();
         System.exit(0);
     }
 
-    private static void saveToSlot(long seed, Point avatar, int slot) {
-        String filename = SAVE_FILE_PREFIX + slot + ".dat";
-        try (ObjectOutputStream oos = new ObjectOutputStream(
-                new FileOutputStream(filename))) {
-            oos.writeObject(new GameState(seed, avatar, collectedPositions));
-            System.out.println("[Slot " + slot + "] Saved seed: " + seed + " avatar=" + avatar + " coins= " + collectedPositions.size());
-        } catch (IOException ignored) {}
+    // Snapshots the game and hands it to the background writer; the game keeps running and
+    // the result appears in the HUD.
+    private static void saveToSlot(int slot) {
+        byte[] data = SaveCodec.encode(session.toGameState());
+        SAVE_WRITER.save(slotPath(slot), data, "slot " + slot, indexUpdate(slot, data.length));
+        session.setSlot(slot);
+        System.out.println("[Slot " + slot + "] Saving seed: " + session.getSeed() + " avatar="
+                + session.getAvatarPosition() + " coins= " + session.getCoinsCollected());
+    }
+
+    // Saves to a slot and waits for the write to finish, for saves made on the way out.
+    // Returns true if the save was written.
+    private static boolean saveToSlotAndWait(int slot) {
+        byte[] data = SaveCodec.encode(session.toGameState());
+        try {
+            SAVE_WRITER.saveAndWait(slotPath(slot), data, "slot " + slot, indexUpdate(slot, data.length));
+            session.setSlot(slot);
+            System.out.println("Manually saved to slot " + slot);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to save slot " + slot + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Returns the action that records a finished slot save in the index. The coin counts are
+    // read now, on the game thread, since the save runs later on the writer thread.
+    private static Runnable indexUpdate(int slot, int size) {
+        if (slotIndex == null) {
+            return null;
+        }
+        SlotIndex.Entry entry = new SlotIndex.Entry(slot, session.getSeed(), session.getCoinsCollected(),
+                session.getTotalCoins(), System.currentTimeMillis(), size);
+        return () -> {
+            slotIndex.put(entry);
+            slotIndex.force();
+        };
+    }
+
+    private static Path slotPath(int slot) {
+        return Paths.get(SAVE_FILE_PREFIX + slot + ".dat");
     }
 
     private static boolean withinLOS(int x, int y, Point a, int r) {
@@ -291,41 +625,21 @@ public class Main {
         return dx*dx + dy*dy <= r*r;
     }
 
-    private static Point findStartingPosition(TETile[][] world) {
-        for (int y = 0; y < HEIGHT; y++) {
-            for (int x = 0; x < WIDTH; x++) {
-                if (world[x][y] == Tileset.FLOOR) {
-                    return new Point(x, y);
-                }
-            }
-        }
-        throw new RuntimeException("No floor tile found for avatar");
-    }
 
-    private static boolean handleColonCommand(TETile[][] world, long seed, Point avatarPos) {
-        while (true) {
-            if (StdDraw.hasNextKeyTyped()) {
-                char c = Character.toLowerCase(StdDraw.nextKeyTyped());
-
-                if (c == 'q') {
-                    saveGame(world, seed, avatarPos);
-                    System.exit(0);
-                } else if (c >= '1' && c <= '0' + MAX_SLOTS) {
-                    int slot = c - '0';
-                    saveToSlot(seed, avatarPos, slot);
-                    currentSlot = slot;
-                    System.out.println("Manually saved to slot " + slot);
-                    System.exit(0);
-                } else {
-                    System.out.println("Invalid input after ':'. Save cancelled.");
-                    return false;
-                }
-            }
+    private static void saveToNewSlotAndQuit() {
+        int slot = findFirstAvailableSlot();
+        if (slot < 0) {
+            System.out.println("All " + SLOT_CAPACITY + " save slots are in use. Save cancelled.");
+            return;
         }
+        quit(saveToSlotAndWait(slot));
     }
 
     private static int findFirstAvailableSlot() {
-        for (int i = 1; i <= MAX_SLOTS; i++) {
+        if (slotIndex != null) {
+            return slotIndex.firstFree();
+        }
+        for (int i = 1; i <= SLOT_CAPACITY; i++) {
             File f = new File(SAVE_FILE_PREFIX + i + ".dat");
             if (!f.exists()) {
                 return i;
@@ -334,25 +648,29 @@ public class Main {
         return -1;
     }
 
-    private static void saveGame(TETile[][] world, long seed, Point avatarPos) {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(SAVE_FILE))) {
-            GameState state = new GameState(seed, avatarPos, collectedPositions);
-            oos.writeObject(state);
+    private static void saveGame() {
+        byte[] data = SaveCodec.encode(session.toGameState());
+        boolean saved = false;
+        try {
+            SAVE_WRITER.saveAndWait(Paths.get(SAVE_FILE), data, "save", null);
             System.out.println("Game saved successfully");
+            saved = true;
         } catch (IOException e) {
             System.err.println("Failed to save game: " + e.getMessage());
         }
-        System.exit(0);
+        quit(saved);
     }
 
     private static void loadGame() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(SAVE_FILE))) {
-            GameState state = (GameState) ois.readObject();
-            startLoadedGame(state);
-        } catch (IOException | ClassNotFoundException e) {
+        GameState state;
+        try {
+            state = SaveCodec.readFile(SAVE_FILE);
+        } catch (IOException e) {
             System.err.println("Failed to load game: " + e.getMessage());
             showMainMenu();
+            return;
         }
+        startLoadedGame(state, -1);
     }
 
     private static void drawHUD(TETile[][] world) {
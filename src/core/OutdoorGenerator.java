@@ -0,0 +1,245 @@
+package core;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import tileengine.Tileset;
+
+/**
+ * Generates open country: meadows and beaches between lakes, forests and mountains.
+ *
+ * Two smooth noise fields, elevation and moisture, are built from a few octaves of value
+ * noise: random values on a coarse lattice, blended between lattice points with a
+ * smoothstep curve. They decide the biome of every cell.
+ *
+ * Which cells are passable comes from a cellular automaton. Cells start blocked at random,
+ * more often at high and low elevation so mountains and lakes clump together, and the map
+ * edge is always blocked. Each step then blocks a cell if at least five of the nine cells
+ * around and including it are blocked, which smooths the noise into cave-like open areas.
+ * The grid is kept as bitboards, one bit per cell and each column in consecutive longs, and a
+ * step works on 64 cells at a time: the nine neighbor bits are added with bitwise full
+ * adders into a four-bit count per cell, and the threshold is a bitwise test on that count.
+ *
+ * Only the largest open area is kept, so the world stays connected; smaller pockets are
+ * filled in. Open cells become grass, flowers or sand, blocked ones mountain, forest or
+ * water, by biome.
+ */
+class OutdoorGenerator implements WorldGenerator {
+    private static final int SMOOTHING_STEPS = 4;
+    private static final double BASE_BLOCKED = 0.35;
+    // Extra chance of starting blocked at the extremes of elevation.
+    private static final double ELEVATION_BLOCKED = 0.30;
+    private static final int[] OCTAVE_SIZES = {24, 12, 6};
+
+    private static final double SHORE = 0.38;
+    private static final double HIGHLAND = 0.62;
+    private static final double BLOOM = 0.66;
+
+    @Override
+    public void generate(Layout layout, Random random) {
+        int width = layout.width();
+        int height = layout.height();
+        float[] elevation = noise(width, height, random);
+        float[] moisture = noise(width, height, random);
+
+        // Bitboards hold one column per line, so cell (x, y) is bit y of column x, the same
+        // order as the tile grid.
+        int words = (height + 63) >>> 6;
+        long[] blocked = new long[words * width];
+        SplittableRandom fill = new SplittableRandom(random.nextLong());
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                double e = elevation[x * height + y];
+                double p = BASE_BLOCKED + ELEVATION_BLOCKED * Math.abs(2 * e - 1);
+                if (fill.nextDouble() < p) {
+                    blocked[x * words + (y >>> 6)] |= 1L << y;
+                }
+            }
+        }
+        closeEdges(blocked, width, height);
+        long[] next = new long[blocked.length];
+        for (int step = 0; step < SMOOTHING_STEPS; step++) {
+            smooth(blocked, next, words, width);
+            long[] t = blocked;
+            blocked = next;
+            next = t;
+            closeEdges(blocked, width, height);
+        }
+
+        boolean[] open = largestOpenArea(blocked, words, width, height);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int i = x * height + y;
+                double e = elevation[i];
+                double m = moisture[i];
+                if (open[i]) {
+                    layout.addGround(x, y, e < SHORE ? Tileset.SAND : m > BLOOM ? Tileset.FLOWER : Tileset.GRASS);
+                } else {
+                    layout.setTile(x, y, e < SHORE ? Tileset.WATER : e > HIGHLAND ? Tileset.MOUNTAIN : Tileset.TREE);
+                }
+            }
+        }
+    }
+
+    // Blocks the map edge, which smoothing could open, and the bits past the end of every
+    // column, so shifts bring in blocked neighbors there.
+    private static void closeEdges(long[] grid, int width, int height) {
+        int words = (height + 63) >>> 6;
+        long pad = (height & 63) == 0 ? 0 : -1L << height;
+        long lastBit = 1L << ((height - 1) & 63);
+        for (int x = 0; x < width; x++) {
+            int line = x * words;
+            if (x == 0 || x == width - 1) {
+                Arrays.fill(grid, line, line + words, -1L);
+            }
+            grid[line] |= 1L;
+            grid[line + words - 1] |= pad | lastBit;
+        }
+    }
+
+    // One automaton step from grid into next: a cell is blocked if at least 5 of the 3x3
+    // cells centered on it are. Cells beyond the map count as blocked. The grid is a number
+    // of lines of words longs each; here "row" is a line and "above" and "below" the lines
+    // next to it, whichever way the lines run on the map.
+    static void smooth(long[] grid, long[] next, int words, int lines) {
+        for (int y = 0; y < lines; y++) {
+            int row = y * words;
+            int below = y > 0 ? row - words : -1;
+            int above = y < lines - 1 ? row + words : -1;
+            for (int i = 0; i < words; i++) {
+                long n = above < 0 ? -1L : grid[above + i];
+                long c = grid[row + i];
+                long s = below < 0 ? -1L : grid[below + i];
+
+                // Each cell's neighbors on either side along the line, carried across word
+                // boundaries; the bits shifted in from beyond the line are blocked.
+                long nw = (n << 1) | (i > 0 ? (above < 0 ? 1L : grid[above + i - 1] >>> 63) : 1L);
+                long ne = (n >>> 1) | (i < words - 1 ? (above < 0 ? 1L : grid[above + i + 1]) << 63 : 1L << 63);
+                long w = (c << 1) | (i > 0 ? grid[row + i - 1] >>> 63 : 1L);
+                long e = (c >>> 1) | (i < words - 1 ? grid[row + i + 1] << 63 : 1L << 63);
+                long sw = (s << 1) | (i > 0 ? (below < 0 ? 1L : grid[below + i - 1] >>> 63) : 1L);
+                long se = (s >>> 1) | (i < words - 1 ? (below < 0 ? 1L : grid[below + i + 1]) << 63 : 1L << 63);
+
+                // Add the nine bits of every cell at once. Each row of three goes through a
+                // full adder into a ones bit and a twos bit, then those are added in turn.
+                long s1 = nw ^ n ^ ne;
+                long c1 = (nw & n) | (ne & (nw ^ n));
+                long s2 = w ^ c ^ e;
+                long c2 = (w & c) | (e & (w ^ c));
+                long s3 = sw ^ s ^ se;
+                long c3 = (sw & s) | (se & (sw ^ s));
+
+                long ones = s1 ^ s2 ^ s3;
+                long c4 = (s1 & s2) | (s3 & (s1 ^ s2));
+                long t1 = c1 ^ c2 ^ c3;
+                long d1 = (c1 & c2) | (c3 & (c1 ^ c2));
+                long twos = t1 ^ c4;
+                long d2 = t1 & c4;
+                long fours = d1 ^ d2;
+                long eights = d1 & d2;
+
+                // The count is at least 5 if it is 8 or 9, or 5 to 7.
+                next[row + i] = eights | (fours & (twos | ones));
+            }
+        }
+    }
+
+    // Flood-fills every open area and returns the cells (x * height + y) of the largest.
+    // The fill numbers cells by bit position in the bitboard, x * (64 * words) + y, so a
+    // cell's blocked bit is found with a shift and its neighbors are +-1 and +-stride.
+    private static boolean[] largestOpenArea(long[] blocked, int words, int width, int height) {
+        int stride = words << 6;
+        int[] area = new int[width * stride];  // 0 = not yet visited, else area number
+        int[] queue = new int[width * stride];
+        int best = 0;
+        int bestSize = 0;
+        int areas = 0;
+        for (int start = 0; start < area.length; start++) {
+            if (area[start] != 0 || isBlocked(blocked, start)) {
+                continue;
+            }
+            int id = ++areas;
+            int tail = 0;
+            area[start] = id;
+            queue[tail++] = start;
+            for (int head = 0; head < tail; head++) {
+                int cell = queue[head];
+                // The map edge is blocked, so neighbors of open cells are on the map.
+                tail = visit(blocked, area, queue, tail, id, cell - 1);
+                tail = visit(blocked, area, queue, tail, id, cell + 1);
+                tail = visit(blocked, area, queue, tail, id, cell - stride);
+                tail = visit(blocked, area, queue, tail, id, cell + stride);
+            }
+            if (tail > bestSize) {
+                bestSize = tail;
+                best = id;
+            }
+        }
+        boolean[] open = new boolean[width * height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                open[x * height + y] = best != 0 && area[x * stride + y] == best;
+            }
+        }
+        return open;
+    }
+
+    // Adds a cell to the area and the queue if it is open and unvisited; returns the new tail.
+    private static int visit(long[] blocked, int[] area, int[] queue, int tail, int id, int cell) {
+        if (area[cell] == 0 && !isBlocked(blocked, cell)) {
+            area[cell] = id;
+            queue[tail++] = cell;
+        }
+        return tail;
+    }
+
+    private static boolean isBlocked(long[] grid, int bit) {
+        return (grid[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    // Fractal value noise in [0, 1], indexed x * height + y.
+    private static float[] noise(int width, int height, Random random) {
+        float[] field = new float[width * height];
+        // Lattice row and blend weight for each y, the same in every column.
+        int[] latticeY = new int[height];
+        float[] weightY = new float[height];
+        float amplitude = 1;
+        float total = 0;
+        for (int size : OCTAVE_SIZES) {
+            int lw = width / size + 2;
+            int lh = height / size + 2;
+            float[] lattice = new float[lw * lh];
+            for (int i = 0; i < lattice.length; i++) {
+                lattice[i] = random.nextFloat();
+            }
+            for (int y = 0; y < height; y++) {
+                latticeY[y] = y / size;
+                weightY[y] = smoothstep((float) (y % size) / size);
+            }
+            for (int x = 0; x < width; x++) {
+                int left = (x / size) * lh;
+                int right = left + lh;
+                float fx = smoothstep((float) (x % size) / size);
+                int column = x * height;
+                for (int y = 0; y < height; y++) {
+                    int ly = latticeY[y];
+                    float fy = weightY[y];
+                    float l = lattice[left + ly] + (lattice[left + ly + 1] - lattice[left + ly]) * fy;
+                    float r = lattice[right + ly] + (lattice[right + ly + 1] - lattice[right + ly]) * fy;
+                    field[column + y] += amplitude * (l + (r - l) * fx);
+                }
+            }
+            total += amplitude;
+            amplitude /= 2;
+        }
+        for (int i = 0; i < field.length; i++) {
+            field[i] /= total;
+        }
+        return field;
+    }
+
+    private static float smoothstep(float t) {
+        return t * t * (3 - 2 * t);
+    }
+}
@@ -0,0 +1,384 @@
+package core;
+
+import tileengine.TETile;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Route finding over a world grid, for auto-walk.
+ *
+ * Cells are numbered column by column (index x * height + y) and walkability is packed
+ * into a bitset, one bit per cell, using the same rule as Rules.canEnter. Walls never
+ * change during play, so it is built once.
+ *
+ * Two kinds of query are supported:
+ *
+ * findPath() runs A* between two cells with a Manhattan-distance heuristic. Its working
+ * arrays are allocated once and tagged with a search number, so a query never clears them
+ * and costs only the cells it visits.
+ *
+ * pathToNearestCoin() reads a distance field: for every cell, the number of steps to the
+ * nearest remaining coin and which coin that is, built by one multi-source BFS from all
+ * coins. Following decreasing distances from any cell leads to the nearest coin, so the
+ * query is O(path length). When a coin is collected, removeCoin() recomputes only the
+ * cells whose nearest coin it was, starting from the distances of the cells around them.
+ */
+class Pathfinder {
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+    private static final int NO_COIN = -1;
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final int width;
+    private final int height;
+    private final long[] walkable;
+
+    // Distance field: steps to the nearest coin and that coin's ordinal, per cell.
+    private int[] coinDistance;
+    private int[] nearestCoin;
+
+    // A* working state; a cell's entries are only valid if searchTag[cell] == search.
+    private final int[] searchTag;
+    private final int[] cost;
+    private final int[] cameFrom;
+    private int search;
+    private final LongHeap open = new LongHeap();
+
+    Pathfinder(TETile[][] world) {
+        this.width = world.length;
+        this.height = world[0].length;
+        int cells = width * height;
+        this.walkable = new long[(cells + 63) >>> 6];
+        int i = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++, i++) {
+                if (!Rules.blocks(world[x][y])) {
+                    walkable[i >>> 6] |= 1L << i;
+                }
+            }
+        }
+        this.searchTag = new int[cells];
+        this.cost = new int[cells];
+        this.cameFrom = new int[cells];
+    }
+
+    int cell(int x, int y) {
+        return x * height + y;
+    }
+
+    int cellX(int cell) {
+        return cell / height;
+    }
+
+    int cellY(int cell) {
+        return cell % height;
+    }
+
+    boolean isWalkable(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height && isWalkable(cell(x, y));
+    }
+
+    private boolean isWalkable(int cell) {
+        return (walkable[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Finds a shortest path between two cells.
+     * @return the cells to step through in order, ending with the target and not including
+     *         the start, or null if the target can't be reached
+     */
+    int[] findPath(int fromX, int fromY, int toX, int toY) {
+        if (!isWalkable(fromX, fromY) || !isWalkable(toX, toY)) {
+            return null;
+        }
+        int start = cell(fromX, fromY);
+        int goal = cell(toX, toY);
+        if (++search == 0) {
+            Arrays.fill(searchTag, 0);
+            search = 1;
+        }
+        open.clear();
+        searchTag[start] = search;
+        cost[start] = 0;
+        cameFrom[start] = -1;
+        open.push(heuristic(start, toX, toY), start);
+
+        while (!open.isEmpty()) {
+            long top = open.pop();
+            int current = (int) top;
+            int f = (int) (top >>> 32);
+            if (f > cost[current] + heuristic(current, toX, toY)) {
+                continue;  // stale entry; the cell was reached more cheaply since
+            }
+            if (current == goal) {
+                return tracePath(start, goal);
+            }
+            int x = cellX(current);
+            int y = cellY(current);
+            int next = cost[current] + 1;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (!isWalkable(nx, ny)) {
+                    continue;
+                }
+                int neighbor = cell(nx, ny);
+                if (searchTag[neighbor] != search || next < cost[neighbor]) {
+                    searchTag[neighbor] = search;
+                    cost[neighbor] = next;
+                    cameFrom[neighbor] = current;
+                    open.push(next + heuristic(neighbor, toX, toY), neighbor);
+                }
+            }
+        }
+        return null;
+    }
+
+    private int heuristic(int cell, int toX, int toY) {
+        return Math.abs(cellX(cell) - toX) + Math.abs(cellY(cell) - toY);
+    }
+
+    private int[] tracePath(int start, int goal) {
+        int[] path = new int[cost[goal]];
+        for (int c = goal, i = path.length - 1; c != start; c = cameFrom[c], i--) {
+            path[i] = c;
+        }
+        return path;
+    }
+
+    /**
+     * Builds the distance field from the given coins. Call again only to start over; after
+     * that, report each collected coin with removeCoin().
+     * @param coinX x of each coin, indexed by ordinal
+     * @param coinY y of each coin, indexed by ordinal
+     * @param collected coin ordinals to leave out, or null
+     */
+    void buildCoinField(int[] coinX, int[] coinY, BitSet collected) {
+        int cells = width * height;
+        if (coinDistance == null) {
+            coinDistance = new int[cells];
+            nearestCoin = new int[cells];
+        }
+        Arrays.fill(coinDistance, UNREACHABLE);
+        Arrays.fill(nearestCoin, NO_COIN);
+        int[] queue = new int[cells];
+        int tail = 0;
+        for (int i = 0; i < coinX.length; i++) {
+            if (collected != null && collected.get(i)) {
+                continue;
+            }
+            int c = cell(coinX[i], coinY[i]);
+            if (coinDistance[c] != 0) {
+                coinDistance[c] = 0;
+                nearestCoin[c] = i;
+                queue[tail++] = c;
+            }
+        }
+        for (int head = 0; head < tail; head++) {
+            int current = queue[head];
+            int x = cellX(current);
+            int y = cellY(current);
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (isWalkable(nx, ny)) {
+                    int neighbor = cell(nx, ny);
+                    if (coinDistance[neighbor] == UNREACHABLE) {
+                        coinDistance[neighbor] = coinDistance[current] + 1;
+                        nearestCoin[neighbor] = nearestCoin[current];
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+        }
+    }
+
+    boolean hasCoinField() {
+        return coinDistance != null;
+    }
+
+    /**
+     * Updates the distance field after the coin with the given ordinal was collected.
+     * Only the cells that coin was nearest to are visited, plus their neighbors.
+     */
+    void removeCoin(int ordinal, int x, int y) {
+        int origin = cell(x, y);
+        if (coinDistance == null || nearestCoin[origin] != ordinal) {
+            return;
+        }
+        // Every cell owned by the coin is connected to it through other owned cells (each
+        // got its distance from an owned neighbor), so a flood from the coin finds them all.
+        int[] region = new int[16];
+        int size = 0;
+        region[size++] = origin;
+        nearestCoin[origin] = NO_COIN;
+        coinDistance[origin] = UNREACHABLE;
+        for (int i = 0; i < size; i++) {
+            int current = region[i];
+            int cx = cellX(current);
+            int cy = cellY(current);
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (isWalkable(nx, ny)) {
+                    int neighbor = cell(nx, ny);
+                    if (nearestCoin[neighbor] == ordinal) {
+                        nearestCoin[neighbor] = NO_COIN;
+                        coinDistance[neighbor] = UNREACHABLE;
+                        if (size == region.length) {
+                            region = Arrays.copyOf(region, size * 2);
+                        }
+                        region[size++] = neighbor;
+                    }
+                }
+            }
+        }
+
+        // Reseed the region from the cells bordering it, then run Dijkstra over it. Every
+        // step costs 1, so a heap keyed by distance processes cells in BFS order.
+        open.clear();
+        for (int i = 0; i < size; i++) {
+            int current = region[i];
+            int cx = cellX(current);
+            int cy = cellY(current);
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (isWalkable(nx, ny)) {
+                    int neighbor = cell(nx, ny);
+                    if (nearestCoin[neighbor] != NO_COIN && coinDistance[neighbor] + 1 < coinDistance[current]) {
+                        coinDistance[current] = coinDistance[neighbor] + 1;
+                        nearestCoin[current] = nearestCoin[neighbor];
+                    }
+                }
+            }
+            if (nearestCoin[current] != NO_COIN) {
+                open.push(coinDistance[current], current);
+            }
+        }
+        while (!open.isEmpty()) {
+            long top = open.pop();
+            int current = (int) top;
+            if ((int) (top >>> 32) > coinDistance[current]) {
+                continue;
+            }
+            int cx = cellX(current);
+            int cy = cellY(current);
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (isWalkable(nx, ny)) {
+                    int neighbor = cell(nx, ny);
+                    if (coinDistance[current] + 1 < coinDistance[neighbor]) {
+                        coinDistance[neighbor] = coinDistance[current] + 1;
+                        nearestCoin[neighbor] = nearestCoin[current];
+                        open.push(coinDistance[neighbor], neighbor);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return steps from (x, y) to the nearest remaining coin, or -1 if none can be reached
+     */
+    int distanceToNearestCoin(int x, int y) {
+        if (coinDistance == null || !isWalkable(x, y)) {
+            return -1;
+        }
+        int d = coinDistance[cell(x, y)];
+        return d == UNREACHABLE ? -1 : d;
+    }
+
+    /**
+     * Follows the distance field downhill from (x, y) to the nearest remaining coin.
+     * @return the cells to step through, ending on the coin, or null if none is reachable
+     */
+    int[] pathToNearestCoin(int x, int y) {
+        int steps = distanceToNearestCoin(x, y);
+        if (steps < 0) {
+            return null;
+        }
+        int[] path = new int[steps];
+        int cx = x;
+        int cy = y;
+        for (int i = 0; i < steps; i++) {
+            int want = coinDistance[cell(cx, cy)] - 1;
+            for (int d = 0; d < 4; d++) {
+                int nx = cx + DX[d];
+                int ny = cy + DY[d];
+                if (isWalkable(nx, ny) && coinDistance[cell(nx, ny)] == want) {
+                    cx = nx;
+                    cy = ny;
+                    break;
+                }
+            }
+            path[i] = cell(cx, cy);
+        }
+        return path;
+    }
+
+    /**
+     * @return the movement key that steps from one cell to an adjacent one
+     */
+    char moveKey(int from, int to) {
+        int dx = cellX(to) - cellX(from);
+        int dy = cellY(to) - cellY(from);
+        return dx > 0 ? 'd' : dx < 0 ? 'a' : dy > 0 ? 'w' : 's';
+    }
+
+    // Binary min-heap of longs, used as (priority << 32 | cell) pairs. Entries are never
+    // updated in place; callers skip stale ones when they pop.
+    private static final class LongHeap {
+        private long[] items = new long[64];
+        private int size;
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(int priority, int cell) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            long item = ((long) priority << 32) | cell;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (items[parent] <= item) {
+                    break;
+                }
+                items[i] = items[parent];
+                i = parent;
+            }
+            items[i] = item;
+        }
+
+        long pop() {
+            long top = items[0];
+            long last = items[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && items[child + 1] < items[child]) {
+                    child++;
+                }
+                if (items[child] >= last) {
+                    break;
+                }
+                items[i] = items[child];
+                i = child;
+            }
+            items[i] = last;
+            return top;
+        }
+    }
+}
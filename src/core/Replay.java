@@ -0,0 +1,135 @@
+package core;
+
+import tileengine.TETile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Runs a game headlessly from a seed and a string of keys, feeding them one by one to a
+ * GameSession, the same one the interactive game and the server use, but drawing nothing
+ * and touching no files. Useful for reproducing a session exactly, regression-testing game
+ * logic, and soak-testing with long random inputs.
+ *
+ * Keys are the session's (see GameSession): w/a/s/d move, '>' and '<' take the stairs,
+ * digits 1-9 record a slot save, and ':' followed by q, a slot digit or n ends the session
+ * the way the matching save-and-quit does. c starts an auto-walk that a replay never
+ * steps, so it has no effect. Input after the game ends is not processed.
+ *
+ * The top level is generated once, when the Replay is made, and every run() starts a new
+ * game on a copy of it, so replaying many key strings against one seed mostly costs the
+ * moves. Levels below are generated as each run reaches them. A Replay is not
+ * thread-safe.
+ *
+ * Usage: java core.Replay seed keys [iterations] [--generator rooms|bsp|outdoor], where
+ * keys may be @file to read them from a file.
+ */
+public class Replay {
+    /**
+     * The state of a game at the end of a replay.
+     * @param lastSavedSlot the slot of the last save to a numbered slot, or -1 if none; a
+     *                      replay ending in ":n" doesn't know which slot that would be
+     */
+    public record Result(long seed, TETile[][] world, int avatarX, int avatarY, int coinsCollected,
+                         int totalCoins, int movesMade, int keysProcessed, boolean won, boolean quit,
+                         int lastSavedSlot, int depth) {
+    }
+
+    private final int width;
+    private final int height;
+    private final long seed;
+    private final WorldGenerator.Kind generator;
+    // The top level as generated; runs play on copies of it.
+    private final Level top;
+
+    public Replay(long seed) {
+        this(GameSession.WIDTH, GameSession.HEIGHT, seed);
+    }
+
+    public Replay(int width, int height, long seed) {
+        this(width, height, seed, WorldGenerator.Kind.ROOMS);
+    }
+
+    public Replay(int width, int height, long seed, WorldGenerator.Kind generator) {
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.generator = generator;
+        this.top = Level.generate(width, height, seed, generator, 0);
+    }
+
+    /**
+     * Plays the given keys from the start of a new game.
+     * @param keys the keys typed, in order
+     * @return the final state
+     */
+    public Result run(CharSequence keys) {
+        GameSession session = GameSession.newGame(width, height, seed, generator, top.copy());
+        int moves = 0;
+        int lastSlot = -1;
+        int i = 0;
+        int n = keys.length();
+        while (i < n) {
+            switch (session.step(keys.charAt(i++))) {
+                case MOVED -> moves++;
+                case WON -> {
+                    return result(session, moves + 1, i, true, false, lastSlot);
+                }
+                case SAVE_TO_SLOT -> lastSlot = session.getRequestedSlot();
+                case SAVE_AND_QUIT, SAVE_TO_NEW_SLOT_AND_QUIT -> {
+                    return result(session, moves, i, false, true, lastSlot);
+                }
+                case SAVE_TO_SLOT_AND_QUIT -> {
+                    return result(session, moves, i, false, true, session.getRequestedSlot());
+                }
+                default -> {
+                }
+            }
+        }
+        return result(session, moves, i, false, false, lastSlot);
+    }
+
+    private Result result(GameSession session, int moves, int keys, boolean won, boolean quit, int slot) {
+        return new Result(seed, session.getWorld(), session.getAvatarX(), session.getAvatarY(),
+                session.getCoinsCollected(), session.getTotalCoins(), moves, keys, won, quit, slot,
+                session.getDepth());
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java core.Replay seed keys [iterations] [--generator rooms|bsp|outdoor]");
+            System.exit(1);
+        }
+        long seed = Long.parseLong(args[0]);
+        String keys = args[1].startsWith("@") ? Files.readString(Path.of(args[1].substring(1))) : args[1];
+        int iterations = 1;
+        WorldGenerator.Kind generator = WorldGenerator.Kind.ROOMS;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--generator") && i + 1 < args.length) {
+                generator = WorldGenerator.Kind.valueOf(args[++i].toUpperCase(Locale.ROOT));
+            } else {
+                iterations = Integer.parseInt(args[i]);
+            }
+        }
+
+        Replay replay = new Replay(GameSession.WIDTH, GameSession.HEIGHT, seed, generator);
+        Result result = null;
+        long keysTotal = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result = replay.run(keys);
+            keysTotal += result.keysProcessed();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        System.out.print(TETile.toString(result.world()));
+        System.out.println("avatar=(" + result.avatarX() + ", " + result.avatarY() + ") coins="
+                + result.coinsCollected() + "/" + result.totalCoins() + " moves=" + result.movesMade()
+                + " won=" + result.won() + " quit=" + result.quit() + " slot=" + result.lastSavedSlot()
+                + " depth=" + result.depth());
+        System.out.printf("%d keys in %.1f ms (%.1f M keys/s)%n", keysTotal, elapsed / 1e6,
+                keysTotal * 1e3 / Math.max(1, elapsed));
+    }
+}
@@ -0,0 +1,133 @@
+package core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import utils.RandomUtils;
+
+/**
+ * The original generator: rooms of random size at random positions, each retried until it
+ * fits, joined by a minimum spanning tree (Prim's algorithm) of L-shaped hallways. Extra
+ * rooms are then added, each connected to its nearest room, until the fill ratio is
+ * reached or no more fit.
+ */
+class RoomsGenerator implements WorldGenerator {
+    private static final int MIN_ROOM_W = 6;
+    private static final int MAX_ROOM_W = 14;
+    private static final int MIN_ROOM_H = 6;
+    private static final int MAX_ROOM_H = 12;
+    private static final int MAX_ATTEMPTS = 1000;
+
+    private final World.Tuning tuning;
+    private Layout layout;
+    private Random random;
+
+    RoomsGenerator(World.Tuning tuning) {
+        this.tuning = tuning;
+    }
+
+    @Override
+    public void generate(Layout layout, Random random) {
+        this.layout = layout;
+        this.random = random;
+        placeRooms();
+        connectRoomsWithMST();
+        while (layout.fillRatio() < tuning.minFillRatio() && layout.extraRoomCount() < tuning.maxExtraRooms()) {
+            boolean added = addAdditionalRoom();
+            if (!added) {
+                break;  // no space for more rooms
+            }
+            layout.markExtraRoom();
+        }
+    }
+
+    private void placeRooms() {
+        int attempts = 0;
+        while (layout.roomCount() < tuning.targetRooms() && attempts < MAX_ATTEMPTS) {
+            // use the helper to generate room candidates
+            tryAddRandomRoom();
+            attempts++;
+        }
+    }
+
+    // Draws a random room and adds it if it fits. Returns its number, or -1 if it didn't fit.
+    private int tryAddRandomRoom() {
+        int rw = RandomUtils.uniform(random, MIN_ROOM_W, MAX_ROOM_W + 1);
+        int rh = RandomUtils.uniform(random, MIN_ROOM_H, MAX_ROOM_H + 1);
+        int rx = RandomUtils.uniform(random, 1, layout.width() - rw - 1);
+        int ry = RandomUtils.uniform(random, 1, layout.height() - rh - 1);
+        if (!layout.fits(rx, ry, rw, rh)) {
+            return -1;
+        }
+        return layout.addRoom(rx, ry, rw, rh);
+    }
+
+    // Connect all rooms using a Minimum Spanning Tree (Prim's algorithm). Both lists stay in
+    // a fixed order, so ties between equally distant pairs always go the same way.
+    private void connectRoomsWithMST() {
+        if (layout.roomCount() == 0) {
+            return;
+        }
+        List<Integer> connected = new ArrayList<>();
+        List<Integer> remaining = new ArrayList<>();
+        // start with first room
+        connected.add(0);
+        for (int i = 1; i < layout.roomCount(); i++) {
+            remaining.add(i);
+        }
+
+        while (!remaining.isEmpty()) {
+            int bestA = -1;
+            int bestB = -1;
+            int bestDist = Integer.MAX_VALUE;
+            // Find closest pair (a in connected, b in remaining)
+            for (int a : connected) {
+                for (int i = 0; i < remaining.size(); i++) {
+                    int dist = distance(a, remaining.get(i));
+                    if (dist < bestDist) {
+                        bestDist = dist;
+                        bestA = a;
+                        bestB = i;
+                    }
+                }
+            }
+            int b = remaining.remove(bestB);
+            layout.connect(bestA, b, random);
+            connected.add(b);
+        }
+    }
+
+    // attempts to place and connect one extra room.
+    private boolean addAdditionalRoom() {
+        for (int i = 0; i < MAX_ATTEMPTS; i++) {
+            int r = tryAddRandomRoom();
+            if (r >= 0) {
+                layout.connect(findNearestRoom(r), r, random);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // finds the closest room to target for connecting.
+    private int findNearestRoom(int target) {
+        int nearest = -1;
+        int bestDist = Integer.MAX_VALUE;
+        for (int r = 0; r < layout.roomCount(); r++) {
+            if (r == target) {
+                continue;
+            }
+            int dist = distance(r, target);
+            if (dist < bestDist) {
+                bestDist = dist;
+                nearest = r;
+            }
+        }
+        return nearest;
+    }
+
+    private int distance(int a, int b) {
+        return Math.abs(layout.centerX(a) - layout.centerX(b)) + Math.abs(layout.centerY(a) - layout.centerY(b));
+    }
+}
@@ -0,0 +1,78 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.awt.Point;
+
+/**
+ * The movement rules of the game, shared by GameSession, the pathfinder and the world
+ * checks so they always agree on where the avatar can go.
+ */
+class Rules {
+    private Rules() {
+    }
+
+    static boolean isMoveKey(char c) {
+        return c == 'w' || c == 'a' || c == 's' || c == 'd';
+    }
+
+    /**
+     * @return the change in x for movement key c
+     */
+    static int dx(char c) {
+        return c == 'd' ? 1 : c == 'a' ? -1 : 0;
+    }
+
+    /**
+     * @return the change in y for movement key c
+     */
+    static int dy(char c) {
+        return c == 'w' ? 1 : c == 's' ? -1 : 0;
+    }
+
+    /**
+     * @return true if the avatar may step onto (x, y): inside the map and not a wall or
+     *         impassable terrain
+     */
+    static boolean canEnter(TETile[][] world, int x, int y) {
+        return x >= 0 && x < world.length && y >= 0 && y < world[0].length && !blocks(world[x][y]);
+    }
+
+    /**
+     * @return true for tiles the avatar can't walk onto: walls, and the mountains, water and
+     *         trees of outdoor worlds
+     */
+    static boolean blocks(TETile t) {
+        return t == Tileset.WALL || t == Tileset.MOUNTAIN || t == Tileset.WATER || t == Tileset.TREE;
+    }
+
+    /**
+     * @return true for tiles that block line of sight; water is low enough to see across
+     */
+    static boolean blocksSight(TETile t) {
+        return t == Tileset.WALL || t == Tileset.MOUNTAIN || t == Tileset.TREE;
+    }
+
+    /**
+     * @return true for the walkable ground generators lay down: floor indoors, grass, sand
+     *         and flowers outdoors
+     */
+    static boolean isGround(TETile t) {
+        return t == Tileset.FLOOR || t == Tileset.GRASS || t == Tileset.SAND || t == Tileset.FLOWER;
+    }
+
+    /**
+     * @return the first ground tile scanning rows bottom to top, where new games start
+     */
+    static Point findStartingPosition(TETile[][] world) {
+        for (int y = 0; y < world[0].length; y++) {
+            for (int x = 0; x < world.length; x++) {
+                if (isGround(world[x][y])) {
+                    return new Point(x, y);
+                }
+            }
+        }
+        throw new RuntimeException("No ground tile found for avatar");
+    }
+}
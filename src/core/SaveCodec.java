@@ -0,0 +1,229 @@
+package core;
+
+import utils.Varint;
+
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes GameState in a small versioned binary format:
+ *
+ *   int     magic, the ASCII bytes "BYOW"
+ *   byte    format version
+ *   varint  body length in bytes
+ *   body    see below
+ *   int     CRC32 of the body
+ *
+ * Version 1 body: seed (zigzag varlong), avatar x and y (varints), number of coins in the
+ * world (varint), the collected-coin bitset as ceil(coins / 64) longs, bit i set if coin i
+ * (see World.getCoinOrdinal) was collected, the tile delta length (varint) and the
+ * TileDelta itself: every tile changed from the seed's world, and the generator that made
+ * the world (varint, the WorldGenerator.Kind ordinal). The coins and delta are those of
+ * the level the avatar is on; then come that level's depth (varint), the number of other
+ * changed levels (varint), and for each its depth (varint) followed by its coin count,
+ * bitset, delta length and delta as above.
+ *
+ * Saves from before this format were written with Java serialization. Those are
+ * recognized by their stream header and read through readLegacy(), so old .dat files
+ * still load; they are rewritten in the binary format the next time the game saves.
+ */
+class SaveCodec {
+    static final int MAGIC = 0x42594F57;
+    static final int VERSION = 1;
+
+    // Bodies are tiny; anything claiming to be larger than this is corrupt.
+    private static final int MAX_BODY_LENGTH = 1 << 24;
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+    private SaveCodec() {
+    }
+
+    static byte[] encode(GameState state) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try {
+            write(state, bytes);
+        } catch (IOException e) {
+            throw new AssertionError("ByteArrayOutputStream does not throw", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static void write(GameState state, OutputStream out) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        Varint.writeSignedLong(body, state.getSeed());
+        Varint.writeUnsignedInt(body, state.getAvatarPosition().x);
+        Varint.writeUnsignedInt(body, state.getAvatarPosition().y);
+        if (state.isLegacy()) {
+            throw new IllegalArgumentException("Resolve legacy coins before saving");
+        }
+        writeLevel(body, state.getCollected(), state.getCoinCount(), state.getTileDelta());
+        Varint.writeUnsignedInt(body, state.getGenerator().ordinal());
+        Varint.writeUnsignedInt(body, state.getDepth());
+        Varint.writeUnsignedInt(body, state.getOtherLevels().size());
+        for (Map.Entry<Integer, GameState.LevelState> level : state.getOtherLevels().entrySet()) {
+            Varint.writeUnsignedInt(body, level.getKey());
+            GameState.LevelState l = level.getValue();
+            writeLevel(body, l.collected(), l.coinCount(), l.tileDelta());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes.toByteArray());
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        Varint.writeUnsignedInt(data, bodyBytes.size());
+        bodyBytes.writeTo(data);
+        data.writeInt((int) crc.getValue());
+        data.flush();
+    }
+
+    // Writes a level's coin count, collected-coin bitset, delta length and delta.
+    private static void writeLevel(DataOutputStream body, BitSet collected, int coinCount, byte[] delta)
+            throws IOException {
+        Varint.writeUnsignedInt(body, coinCount);
+        long[] words = collected.toLongArray();
+        for (int i = 0; i < (coinCount + 63) / 64; i++) {
+            body.writeLong(i < words.length ? words[i] : 0L);
+        }
+        if (delta == null) {
+            throw new IllegalArgumentException("Save needs a tile delta");
+        }
+        Varint.writeUnsignedInt(body, delta.length);
+        body.write(delta);
+    }
+
+    static GameState decode(byte[] bytes) throws IOException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Reads a save in either the binary format or the legacy serialized format.
+     * @throws IOException if the data is truncated, corrupt or from a newer version
+     */
+    static GameState read(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        buffered.mark(2);
+        int header = (buffered.read() << 8) | buffered.read();
+        buffered.reset();
+        if (header == JAVA_SERIALIZATION_MAGIC) {
+            return readLegacy(buffered);
+        }
+
+        DataInputStream data = new DataInputStream(buffered);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a save file");
+        }
+        int version = data.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported save version " + version);
+        }
+        int length = Varint.readUnsignedInt(data);
+        if (length < 0 || length > MAX_BODY_LENGTH) {
+            throw new IOException("Corrupt save: body length " + length);
+        }
+        byte[] bodyBytes = new byte[length];
+        data.readFully(bodyBytes);
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes);
+        if (data.readInt() != (int) crc.getValue()) {
+            throw new IOException("Corrupt save: checksum mismatch");
+        }
+
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(bodyBytes));
+        long seed = Varint.readSignedLong(body);
+        Point avatar = new Point(Varint.readUnsignedInt(body), Varint.readUnsignedInt(body));
+        int coinCount = readCoinCount(body, length);
+        BitSet collected = readCollected(body, coinCount);
+        byte[] delta = readDelta(body, length);
+        WorldGenerator.Kind generator;
+        try {
+            generator = WorldGenerator.Kind.byOrdinal(Varint.readUnsignedInt(body));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt save: " + e.getMessage());
+        }
+        int depth = Varint.readUnsignedInt(body);
+        int levels = Varint.readUnsignedInt(body);
+        if (depth < 0 || levels < 0 || levels > length) {
+            throw new IOException("Corrupt save: depth " + depth + ", " + levels + " other levels");
+        }
+        Map<Integer, GameState.LevelState> otherLevels = new TreeMap<>();
+        for (int i = 0; i < levels; i++) {
+            int d = Varint.readUnsignedInt(body);
+            if (d < 0 || d == depth || otherLevels.containsKey(d)) {
+                throw new IOException("Corrupt save: level " + d + " repeated");
+            }
+            int count = readCoinCount(body, length);
+            otherLevels.put(d, new GameState.LevelState(readCollected(body, count), count,
+                    readDelta(body, length)));
+        }
+        return new GameState(seed, generator, depth, avatar, collected, coinCount, delta, otherLevels);
+    }
+
+    private static int readCoinCount(DataInputStream body, int length) throws IOException {
+        int coinCount = Varint.readUnsignedInt(body);
+        if (coinCount > length * 8) {
+            throw new IOException("Corrupt save: coin count " + coinCount);
+        }
+        return coinCount;
+    }
+
+    private static BitSet readCollected(DataInputStream body, int coinCount) throws IOException {
+        long[] words = new long[(coinCount + 63) / 64];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = body.readLong();
+        }
+        BitSet collected = BitSet.valueOf(words);
+        if (collected.length() > coinCount) {
+            throw new IOException("Corrupt save: coin " + (collected.length() - 1) + " out of range");
+        }
+        return collected;
+    }
+
+    private static byte[] readDelta(DataInputStream body, int length) throws IOException {
+        int deltaLength = Varint.readUnsignedInt(body);
+        if (deltaLength < 0 || deltaLength > length) {
+            throw new IOException("Corrupt save: tile delta length " + deltaLength);
+        }
+        byte[] delta = new byte[deltaLength];
+        body.readFully(delta);
+        return delta;
+    }
+
+    static GameState readFile(String filename) throws IOException {
+        try (InputStream in = new FileInputStream(filename)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Writes state to filename synchronously, replacing the file atomically.
+     */
+    static void writeFile(String filename, GameState state) throws IOException {
+        SaveWriter.writeAtomically(Paths.get(filename), encode(state));
+    }
+
+    // Migration path for saves written with ObjectOutputStream before the binary format.
+    private static GameState readLegacy(InputStream in) throws IOException {
+        try {
+            return (GameState) new ObjectInputStream(in).readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unreadable legacy save", e);
+        }
+    }
+}
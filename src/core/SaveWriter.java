@@ -0,0 +1,110 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes save files on a background thread so the game loop never waits on the disk.
+ *
+ * Every write goes to a temporary file next to the target, is forced to the device, and
+ * is then renamed over the target in one atomic step. A crash at any point leaves either
+ * the old save or the new one, never a half-written file.
+ *
+ * Results come back as short messages for the HUD through pollResult(); the game loop
+ * checks for them once per tick.
+ */
+class SaveWriter {
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "save-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ConcurrentLinkedQueue<String> results = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Queues data to be written to target. The caller must not modify data afterwards.
+     * @param label how the save is described in the HUD message, e.g. "slot 2", or null to
+     *              only report failures
+     * @param onSaved run on the writer thread once the file is safely on disk, may be null
+     * @return a future that completes when the file is on disk, or fails with the IOException
+     */
+    Future<?> save(Path target, byte[] data, String label, Runnable onSaved) {
+        return executor.submit(() -> {
+            try {
+                writeAtomically(target, data);
+                if (onSaved != null) {
+                    onSaved.run();
+                }
+                if (label != null) {
+                    results.add("Saved " + label);
+                }
+            } catch (IOException e) {
+                results.add("Save" + (label == null ? "" : " to " + label) + " FAILED: " + e.getMessage());
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Writes data to target and waits for it to reach the disk.
+     * @throws IOException if the write failed
+     */
+    void saveAndWait(Path target, byte[] data, String label, Runnable onSaved) throws IOException {
+        try {
+            save(target, data, label, onSaved).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving", e);
+        }
+    }
+
+    /**
+     * @return the oldest unread result message, or null if there is none
+     */
+    String pollResult() {
+        return results.poll();
+    }
+
+    /**
+     * Writes data to a temp file beside target, fsyncs it, and renames it over target.
+     */
+    static void writeAtomically(Path target, byte[] data) throws IOException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                ch.write(buf);
+            }
+            ch.force(true);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Make the rename itself durable. Not every platform lets us open a directory.
+        try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
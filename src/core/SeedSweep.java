@@ -0,0 +1,272 @@
+package core;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.stream.LongStream;
+
+/**
+ * Generates the worlds for a range of seeds and reports statistics about them, for tuning
+ * World.Tuning (target rooms, minimum fill ratio, maximum extra rooms).
+ *
+ * For each world it records the fill ratio, room count, extra rooms, hallway length, coins
+ * placed and generation time. Worlds are dropped as soon as they are measured; each worker
+ * thread keeps only running statistics (count, mean and variance by Welford's method, min
+ * and max with their seeds, and a fixed-bin histogram) plus its slowest seeds, and the
+ * workers' results are merged at the end. Nothing is shared while the sweep runs, so it
+ * scales with the number of cores.
+ *
+ * Outliers reported: the slowest seeds to generate, and how many worlds stopped short of
+ * the target fill ratio.
+ *
+ * Usage: java core.SeedSweep firstSeed count [--rooms N] [--fill R] [--extra N]
+ *        [--generator rooms|bsp|outdoor] [--csv file] [--json file]
+ * Without --csv or --json the CSV summary is printed.
+ */
+public class SeedSweep {
+    private static final int SLOWEST_KEPT = 10;
+
+    /** Running statistics and a histogram for one measurement. */
+    static final class Metric {
+        final String name;
+        private final double lo;
+        private final double hi;
+        private final long[] bins;
+        private long count;
+        private double mean;
+        private double m2;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private long minSeed;
+        private long maxSeed;
+
+        Metric(String name, double lo, double hi, int binCount) {
+            this.name = name;
+            this.lo = lo;
+            this.hi = hi;
+            this.bins = new long[binCount];
+        }
+
+        void record(double value, long seed) {
+            count++;
+            double delta = value - mean;
+            mean += delta / count;
+            m2 += delta * (value - mean);
+            if (value < min) {
+                min = value;
+                minSeed = seed;
+            }
+            if (value > max) {
+                max = value;
+                maxSeed = seed;
+            }
+            int bin = (int) ((value - lo) / (hi - lo) * bins.length);
+            bins[Math.clamp(bin, 0, bins.length - 1)]++;
+        }
+
+        // Chan et al.'s parallel combination of two running means and variances.
+        void merge(Metric other) {
+            if (other.count == 0) {
+                return;
+            }
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * count * other.count / total;
+            count = total;
+            if (other.min < min) {
+                min = other.min;
+                minSeed = other.minSeed;
+            }
+            if (other.max > max) {
+                max = other.max;
+                maxSeed = other.maxSeed;
+            }
+            for (int i = 0; i < bins.length; i++) {
+                bins[i] += other.bins[i];
+            }
+        }
+
+        double stddev() {
+            return count > 1 ? Math.sqrt(m2 / (count - 1)) : 0;
+        }
+
+        /**
+         * @return the lower edge of the bin holding the p-th quantile, so integer measurements
+         *         with one bin per value come out exact
+         */
+        double percentile(double p) {
+            long rank = (long) Math.ceil(p * count);
+            long seen = 0;
+            for (int i = 0; i < bins.length; i++) {
+                seen += bins[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.max(min, lo + i * (hi - lo) / bins.length);
+                }
+            }
+            return max;
+        }
+    }
+
+    /** Everything one worker has measured. */
+    static final class Summary {
+        final Metric fill = new Metric("fill_ratio", 0, 1, 100);
+        final Metric rooms = new Metric("rooms", 0, 200, 200);
+        final Metric extraRooms = new Metric("extra_rooms", 0, 200, 200);
+        final Metric hallways = new Metric("hallway_length", 0, 5000, 250);
+        final Metric coins = new Metric("coins", 0, 32, 32);
+        final Metric micros = new Metric("generate_us", 0, 50_000, 500);
+        final Metric[] all = {fill, rooms, extraRooms, hallways, coins, micros};
+        long underFilled;
+        // Min-heap on time, so the fastest of the kept seeds is the one replaced.
+        final PriorityQueue<long[]> slowest = new PriorityQueue<>((a, b) -> Long.compare(a[1], b[1]));
+
+        void record(long seed, World world, long nanos, World.Tuning tuning) {
+            double fillRatio = world.getFillRatio();
+            fill.record(fillRatio, seed);
+            rooms.record(world.getRoomCount(), seed);
+            extraRooms.record(world.getExtraRoomCount(), seed);
+            hallways.record(world.getHallwayLength(), seed);
+            coins.record(world.getCoinCount(), seed);
+            micros.record(nanos / 1000.0, seed);
+            if (fillRatio < tuning.minFillRatio()) {
+                underFilled++;
+            }
+            keepIfSlow(seed, nanos);
+        }
+
+        void merge(Summary other) {
+            for (int i = 0; i < all.length; i++) {
+                all[i].merge(other.all[i]);
+            }
+            underFilled += other.underFilled;
+            for (long[] s : other.slowest) {
+                keepIfSlow(s[0], s[1]);
+            }
+        }
+
+        private void keepIfSlow(long seed, long nanos) {
+            if (slowest.size() < SLOWEST_KEPT) {
+                slowest.add(new long[]{seed, nanos});
+            } else if (nanos > slowest.peek()[1]) {
+                slowest.poll();
+                slowest.add(new long[]{seed, nanos});
+            }
+        }
+
+        List<long[]> slowestFirst() {
+            List<long[]> list = new ArrayList<>(slowest);
+            list.sort((a, b) -> Long.compare(b[1], a[1]));
+            return list;
+        }
+    }
+
+    /**
+     * Generates and measures every world from firstSeed to firstSeed + count - 1 in parallel.
+     */
+    static Summary sweep(long firstSeed, long count, int width, int height, World.Tuning tuning,
+                         WorldGenerator.Kind generator) {
+        return LongStream.range(firstSeed, firstSeed + count).parallel().collect(Summary::new, (summary, seed) -> {
+            long start = System.nanoTime();
+            World world = new World(width, height, seed, tuning, generator);
+            world.generate();
+            summary.record(seed, world, System.nanoTime() - start, tuning);
+        }, Summary::merge);
+    }
+
+    static void writeCsv(Summary s, Writer out) {
+        PrintWriter w = new PrintWriter(out);
+        w.println("metric,count,mean,stddev,min,min_seed,p50,p90,p99,max,max_seed");
+        for (Metric m : s.all) {
+            w.printf(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%d,%.4f,%.4f,%.4f,%.4f,%d%n", m.name, m.count, m.mean,
+                    m.stddev(), m.min, m.minSeed, m.percentile(0.5), m.percentile(0.9), m.percentile(0.99),
+                    m.max, m.maxSeed);
+        }
+        w.flush();
+    }
+
+    static void writeJson(Summary s, World.Tuning tuning, WorldGenerator.Kind generator, Writer out) {
+        PrintWriter w = new PrintWriter(out);
+        w.printf("{%n  \"generator\": \"%s\",%n", generator.name().toLowerCase(Locale.ROOT));
+        w.printf(Locale.ROOT, "  \"tuning\": {\"targetRooms\": %d, \"minFillRatio\": %s, \"maxExtraRooms\": %d},%n",
+                tuning.targetRooms(), tuning.minFillRatio(), tuning.maxExtraRooms());
+        w.printf("  \"underFilled\": %d,%n", s.underFilled);
+        w.print("  \"slowestSeeds\": [");
+        List<long[]> slowest = s.slowestFirst();
+        for (int i = 0; i < slowest.size(); i++) {
+            w.printf(Locale.ROOT, "%s{\"seed\": %d, \"generateUs\": %.1f}", i == 0 ? "" : ", ",
+                    slowest.get(i)[0], slowest.get(i)[1] / 1000.0);
+        }
+        w.println("],");
+        w.println("  \"metrics\": {");
+        for (int i = 0; i < s.all.length; i++) {
+            Metric m = s.all[i];
+            w.printf(Locale.ROOT, "    \"%s\": {\"count\": %d, \"mean\": %.6f, \"stddev\": %.6f, "
+                            + "\"min\": %.6f, \"minSeed\": %d, \"max\": %.6f, \"maxSeed\": %d, "
+                            + "\"p50\": %.6f, \"p90\": %.6f, \"p99\": %.6f,%n",
+                    m.name, m.count, m.mean, m.stddev(), m.min, m.minSeed, m.max, m.maxSeed,
+                    m.percentile(0.5), m.percentile(0.9), m.percentile(0.99));
+            w.printf(Locale.ROOT, "      \"histogram\": {\"lo\": %s, \"hi\": %s, \"bins\": %s}}%s%n",
+                    m.lo, m.hi, Arrays.toString(m.bins), i + 1 < s.all.length ? "," : "");
+        }
+        w.printf("  }%n}%n");
+        w.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        // Options come in pairs, so a flag missing its value leaves an odd count.
+        if (args.length < 2 || args.length % 2 != 0) {
+            System.err.println("Usage: java core.SeedSweep firstSeed count [--rooms N] [--fill R] [--extra N]"
+                    + " [--generator rooms|bsp|outdoor] [--csv file] [--json file]");
+            System.exit(1);
+        }
+        long first = Long.parseLong(args[0]);
+        long count = Long.parseLong(args[1]);
+        World.Tuning d = World.Tuning.DEFAULT;
+        int rooms = d.targetRooms();
+        double fill = d.minFillRatio();
+        int extra = d.maxExtraRooms();
+        WorldGenerator.Kind generator = WorldGenerator.Kind.ROOMS;
+        String csv = null;
+        String json = null;
+        for (int i = 2; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--rooms" -> rooms = Integer.parseInt(args[i + 1]);
+                case "--fill" -> fill = Double.parseDouble(args[i + 1]);
+                case "--extra" -> extra = Integer.parseInt(args[i + 1]);
+                case "--generator" -> generator = WorldGenerator.Kind.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+                case "--csv" -> csv = args[i + 1];
+                case "--json" -> json = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        World.Tuning tuning = new World.Tuning(rooms, fill, extra);
+
+        long begin = System.nanoTime();
+        Summary summary = sweep(first, count, GameSession.WIDTH, GameSession.HEIGHT, tuning, generator);
+        double seconds = (System.nanoTime() - begin) / 1e9;
+
+        if (csv != null) {
+            try (Writer out = Files.newBufferedWriter(Path.of(csv))) {
+                writeCsv(summary, out);
+            }
+        }
+        if (json != null) {
+            try (Writer out = Files.newBufferedWriter(Path.of(json))) {
+                writeJson(summary, tuning, generator, out);
+            }
+        }
+        if (csv == null && json == null) {
+            writeCsv(summary, new PrintWriter(System.out));
+        }
+        System.err.printf(Locale.ROOT, "%d seeds in %.1f s (%.0f seeds/s on %d cores), %d under target fill%n",
+                count, seconds, count / seconds, Runtime.getRuntime().availableProcessors(), summary.underFilled);
+    }
+}
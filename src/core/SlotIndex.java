@@ -0,0 +1,155 @@
+package core;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A small memory-mapped file describing every save slot, so the slot menu can list
+ * hundreds of saves without opening any of them.
+ *
+ * Layout: a 16-byte header (magic "BYWI", version, capacity, reserved) followed by one
+ * fixed 32-byte record per slot:
+ *
+ *   int   used flag (0 or 1)
+ *   int   coins collected
+ *   long  seed
+ *   long  save time, milliseconds since the epoch
+ *   int   coins in the world
+ *   int   payload size in bytes (the slot file itself; its payload starts at offset 0)
+ *
+ * Slot n lives at record n - 1. Records are updated in place after each successful save.
+ * The index only summarizes the slot files, which stay the source of truth: if the index
+ * is missing or unreadable it is rebuilt by reading the slot files once.
+ */
+class SlotIndex {
+    private static final int MAGIC = 0x42595749;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 32;
+
+    /** Summary of one used slot. */
+    record Entry(int slot, long seed, int coinsCollected, int totalCoins, long savedAt, int payloadBytes) {
+    }
+
+    private final int capacity;
+    private final MappedByteBuffer map;
+
+    private SlotIndex(int capacity, MappedByteBuffer map) {
+        this.capacity = capacity;
+        this.map = map;
+    }
+
+    /**
+     * Opens the index at path, creating or rebuilding it if it is missing or doesn't match.
+     * @param capacity number of slots, numbered 1 to capacity
+     * @param slotReader reads slot n's save for a rebuild, or returns null if it has none
+     */
+    static SlotIndex open(Path path, int capacity, IntFunction<Entry> slotReader) throws IOException {
+        boolean fresh = !Files.exists(path);
+        long size = HEADER_BYTES + (long) RECORD_BYTES * capacity;
+        MappedByteBuffer map;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (ch.size() != size) {
+                fresh = true;
+            }
+            map = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        SlotIndex index = new SlotIndex(capacity, map);
+        if (fresh || map.getInt(0) != MAGIC || map.getInt(4) != VERSION || map.getInt(8) != capacity) {
+            index.rebuild(slotReader);
+        }
+        return index;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Records a successful save to the given slot.
+     */
+    synchronized void put(Entry e) {
+        int at = offset(e.slot());
+        map.putInt(at + 4, e.coinsCollected());
+        map.putLong(at + 8, e.seed());
+        map.putLong(at + 16, e.savedAt());
+        map.putInt(at + 24, e.totalCoins());
+        map.putInt(at + 28, e.payloadBytes());
+        map.putInt(at, 1);
+    }
+
+    /**
+     * @return the summary for a slot, or null if the slot is empty
+     */
+    synchronized Entry get(int slot) {
+        int at = offset(slot);
+        if (map.getInt(at) == 0) {
+            return null;
+        }
+        return new Entry(slot, map.getLong(at + 8), map.getInt(at + 4), map.getInt(at + 24),
+                map.getLong(at + 16), map.getInt(at + 28));
+    }
+
+    /**
+     * @return summaries of all used slots in slot order
+     */
+    synchronized List<Entry> used() {
+        List<Entry> entries = new ArrayList<>();
+        for (int slot = 1; slot <= capacity; slot++) {
+            Entry e = get(slot);
+            if (e != null) {
+                entries.add(e);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return the lowest-numbered empty slot, or -1 if every slot is used
+     */
+    synchronized int firstFree() {
+        for (int slot = 1; slot <= capacity; slot++) {
+            if (map.getInt(offset(slot)) == 0) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the index out to disk.
+     */
+    synchronized void force() {
+        map.force();
+    }
+
+    private void rebuild(IntFunction<Entry> slotReader) {
+        map.putInt(0, MAGIC);
+        map.putInt(4, VERSION);
+        map.putInt(8, capacity);
+        map.putInt(12, 0);
+        for (int slot = 1; slot <= capacity; slot++) {
+            map.putInt(offset(slot), 0);
+            Entry e = slotReader.apply(slot);
+            if (e != null) {
+                put(e);
+            }
+        }
+        map.force();
+    }
+
+    private int offset(int slot) {
+        if (slot < 1 || slot > capacity) {
+            throw new IllegalArgumentException("Slot out of range: " + slot);
+        }
+        return HEADER_BYTES + (slot - 1) * RECORD_BYTES;
+    }
+}
@@ -0,0 +1,229 @@
+package core;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Index of the objects placed in a world (so far just coins) by type and position, so
+ * "which coin is nearest" or "how many coins are in this area" don't need a scan of the
+ * whole grid.
+ *
+ * The world is divided into square buckets of BUCKET_SIZE cells, and each bucket keeps a
+ * small array of the entities of each type inside it. Range queries only visit buckets that
+ * overlap the range. Nearest queries search rings of buckets outward from the query point
+ * and stop once the next ring can't hold anything closer than the best found so far.
+ *
+ * Entities are numbered in the order they are added; World adds coins in ordinal order,
+ * so a coin's entity id is its ordinal.
+ */
+public class SpatialIndex {
+    /** Kinds of entity the index can hold. */
+    public enum Type {
+        COIN
+    }
+
+    private static final int BUCKET_SHIFT = 3;
+    private static final int BUCKET_SIZE = 1 << BUCKET_SHIFT;
+    private static final int[] EMPTY = new int[0];
+
+    private final int bucketsX;
+    private final int bucketsY;
+    // members[type][bucket] holds the ids of that type in the bucket, counts[type][bucket]
+    // how many of those slots are used.
+    private final int[][][] members;
+    private final int[][] counts;
+    private final int[] sizes;
+
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+    private Type[] types = new Type[16];
+    private int nextId;
+
+    public SpatialIndex(int width, int height) {
+        this.bucketsX = (width + BUCKET_SIZE - 1) >> BUCKET_SHIFT;
+        this.bucketsY = (height + BUCKET_SIZE - 1) >> BUCKET_SHIFT;
+        int typeCount = Type.values().length;
+        this.members = new int[typeCount][bucketsX * bucketsY][];
+        this.counts = new int[typeCount][bucketsX * bucketsY];
+        for (int[][] byBucket : members) {
+            Arrays.fill(byBucket, EMPTY);
+        }
+        this.sizes = new int[typeCount];
+    }
+
+    /**
+     * Creates a copy of other that changes independently of it.
+     */
+    public SpatialIndex(SpatialIndex other) {
+        this.bucketsX = other.bucketsX;
+        this.bucketsY = other.bucketsY;
+        this.members = new int[other.members.length][][];
+        this.counts = new int[other.counts.length][];
+        for (int t = 0; t < members.length; t++) {
+            members[t] = new int[other.members[t].length][];
+            for (int b = 0; b < members[t].length; b++) {
+                int[] ids = other.members[t][b];
+                members[t][b] = ids == EMPTY ? EMPTY : ids.clone();
+            }
+            counts[t] = other.counts[t].clone();
+        }
+        this.sizes = other.sizes.clone();
+        this.xs = other.xs.clone();
+        this.ys = other.ys.clone();
+        this.types = other.types.clone();
+        this.nextId = other.nextId;
+    }
+
+    /**
+     * Adds an entity at (x, y).
+     * @return its id
+     */
+    public int add(Type type, int x, int y) {
+        int id = nextId++;
+        if (id == xs.length) {
+            xs = Arrays.copyOf(xs, id * 2);
+            ys = Arrays.copyOf(ys, id * 2);
+            types = Arrays.copyOf(types, id * 2);
+        }
+        xs[id] = x;
+        ys[id] = y;
+        types[id] = type;
+
+        int t = type.ordinal();
+        int b = bucket(x >> BUCKET_SHIFT, y >> BUCKET_SHIFT);
+        int n = counts[t][b];
+        if (n == members[t][b].length) {
+            members[t][b] = Arrays.copyOf(members[t][b], Math.max(4, n * 2));
+        }
+        members[t][b][n] = id;
+        counts[t][b] = n + 1;
+        sizes[t]++;
+        return id;
+    }
+
+    /**
+     * Removes the entity of the given type at (x, y), if there is one.
+     * @return its id, or -1 if there was none
+     */
+    public int remove(Type type, int x, int y) {
+        int t = type.ordinal();
+        int b = bucket(x >> BUCKET_SHIFT, y >> BUCKET_SHIFT);
+        int[] ids = members[t][b];
+        int n = counts[t][b];
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            if (xs[id] == x && ys[id] == y) {
+                ids[i] = ids[n - 1];
+                counts[t][b] = n - 1;
+                sizes[t]--;
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of entities of the given type
+     */
+    public int size(Type type) {
+        return sizes[type.ordinal()];
+    }
+
+    public int getX(int id) {
+        return xs[id];
+    }
+
+    public int getY(int id) {
+        return ys[id];
+    }
+
+    public Type getType(int id) {
+        return types[id];
+    }
+
+    /**
+     * Finds the entity of the given type closest to (x, y) in straight-line distance.
+     * @return its id, or -1 if there are none
+     */
+    public int nearest(Type type, int x, int y) {
+        int t = type.ordinal();
+        if (sizes[t] == 0) {
+            return -1;
+        }
+        int bx = Math.clamp(x >> BUCKET_SHIFT, 0, bucketsX - 1);
+        int by = Math.clamp(y >> BUCKET_SHIFT, 0, bucketsY - 1);
+        int maxRing = Math.max(Math.max(bx, bucketsX - 1 - bx), Math.max(by, bucketsY - 1 - by));
+        int best = -1;
+        long bestDistance = Long.MAX_VALUE;
+        for (int r = 0; r <= maxRing; r++) {
+            // Every cell in ring r is at least (r - 1) buckets away along some axis.
+            long reach = (long) Math.max(0, r - 1) * BUCKET_SIZE;
+            if (best >= 0 && reach * reach > bestDistance) {
+                break;
+            }
+            for (int ix = bx - r; ix <= bx + r; ix++) {
+                if (ix < 0 || ix >= bucketsX) {
+                    continue;
+                }
+                // Interior columns of the ring only have their top and bottom bucket in it.
+                int step = (ix == bx - r || ix == bx + r) ? 1 : Math.max(1, 2 * r);
+                for (int iy = by - r; iy <= by + r; iy += step) {
+                    if (iy < 0 || iy >= bucketsY) {
+                        continue;
+                    }
+                    int b = bucket(ix, iy);
+                    int[] ids = members[t][b];
+                    for (int i = counts[t][b] - 1; i >= 0; i--) {
+                        int id = ids[i];
+                        long dx = xs[id] - x;
+                        long dy = ys[id] - y;
+                        long d = dx * dx + dy * dy;
+                        if (d < bestDistance) {
+                            bestDistance = d;
+                            best = id;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Calls action with the id of every entity of the given type inside the rectangle
+     * from (x0, y0) to (x1, y1), inclusive.
+     */
+    public void forEachInRange(Type type, int x0, int y0, int x1, int y1, IntConsumer action) {
+        int t = type.ordinal();
+        int bx0 = Math.max(0, x0 >> BUCKET_SHIFT);
+        int by0 = Math.max(0, y0 >> BUCKET_SHIFT);
+        int bx1 = Math.min(bucketsX - 1, x1 >> BUCKET_SHIFT);
+        int by1 = Math.min(bucketsY - 1, y1 >> BUCKET_SHIFT);
+        for (int ix = bx0; ix <= bx1; ix++) {
+            for (int iy = by0; iy <= by1; iy++) {
+                int b = bucket(ix, iy);
+                int[] ids = members[t][b];
+                for (int i = 0; i < counts[t][b]; i++) {
+                    int id = ids[i];
+                    if (xs[id] >= x0 && xs[id] <= x1 && ys[id] >= y0 && ys[id] <= y1) {
+                        action.accept(id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return how many entities of the given type are inside the rectangle from (x0, y0)
+     *         to (x1, y1), inclusive
+     */
+    public int countInRange(Type type, int x0, int y0, int x1, int y1) {
+        int[] count = new int[1];
+        forEachInRange(type, x0, y0, x1, y1, id -> count[0]++);
+        return count[0];
+    }
+
+    private int bucket(int bx, int by) {
+        return bx * bucketsY + by;
+    }
+}
@@ -0,0 +1,58 @@
+package core;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads keys from a byte stream such as System.in or a socket. hasNextKey() only reports
+ * bytes that have already arrived, so polling it never blocks the game loop. Keys are
+ * expected to be single-byte (ASCII); carriage returns and newlines are skipped so that
+ * line-buffered input also works.
+ */
+class StreamInput implements InputSource {
+    private final InputStream in;
+    private int pending = -1;
+    private boolean closed;
+
+    StreamInput(InputStream in) {
+        this.in = in;
+    }
+
+    @Override
+    public boolean hasNextKey() {
+        if (pending >= 0) {
+            return true;
+        }
+        try {
+            while (!closed && in.available() > 0) {
+                int b = in.read();
+                if (b < 0) {
+                    closed = true;
+                } else if (b != '\n' && b != '\r') {
+                    pending = b;
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            closed = true;
+        }
+        return false;
+    }
+
+    @Override
+    public char nextKey() {
+        if (!hasNextKey()) {
+            throw new IllegalStateException("No key waiting");
+        }
+        char c = (char) pending;
+        pending = -1;
+        return c;
+    }
+
+    /**
+     * @return true once the stream has reached end of file or failed
+     */
+    boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,126 @@
+package core;
+
+import tileengine.AnsiRenderer;
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Shows the game in a text terminal through an AnsiRenderer. The HUD goes on the first
+ * line and the world below it. Frames are drawn synchronously in publish(); thanks to
+ * the renderer's diffing a typical frame is only a handful of bytes, so there is no need
+ * for a separate render thread.
+ */
+class TerminalView implements GameView {
+    private static final int HUD_LINES = 1;
+
+    private final AnsiRenderer renderer;
+    private final FrameSnapshot frame;
+    // The frame's tiles with the avatar and line of sight drawn in, as the renderer takes them.
+    private final TETile[][] tiles;
+    private final int width;
+    private final int height;
+    private boolean showMetrics;
+
+    TerminalView(OutputStream out, int width, int height) {
+        this(out, width, height, 1 << 14);
+    }
+
+    /**
+     * @param bufferSize characters buffered before output is written; the whole first frame
+     *                   fits in the default, later frames are usually much smaller
+     */
+    TerminalView(OutputStream out, int width, int height, int bufferSize) {
+        this.width = width;
+        this.height = height;
+        this.renderer = new AnsiRenderer(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), bufferSize), width, height, HUD_LINES);
+        this.frame = new FrameSnapshot(width, height);
+        this.tiles = new TETile[width][height];
+    }
+
+    @Override
+    public void start() {
+        renderer.invalidate();
+    }
+
+    @Override
+    public void publish(TileGrid world, boolean[][] visibility, int ax, int ay, int coins, int total,
+                        String status) {
+        long frameStart = System.nanoTime();
+        frame.capture(world, visibility, ax, ay, coins, total, status, 0);
+        frame.tiles.copyInto(tiles);
+        if (frame.losEnabled) {
+            for (int x = 0; x < width; x++) {
+                for (int y = 0; y < height; y++) {
+                    if (!frame.visible[x][y]) {
+                        tiles[x][y] = Tileset.NOTHING;
+                    }
+                }
+            }
+        }
+        tiles[ax][ay] = Tileset.AVATAR;
+
+        String hud = "Coins: " + coins + "/" + total + " LOS:" + (frame.losEnabled ? "ON" : "OFF")
+                + "  " + status;
+        if (showMetrics) {
+            hud += "  " + String.join("  ", GameMetrics.overlayLines());
+        }
+        try {
+            int drawn = renderer.renderFrame(tiles);
+            GameMetrics.DRAW_TILES_TIME.record(System.nanoTime() - frameStart);
+            GameMetrics.TILES_DRAWN.record(drawn);
+            renderer.renderText(1, hud);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        GameMetrics.FRAME_TIME.record(System.nanoTime() - frameStart);
+    }
+
+    @Override
+    public void toggleMetricsOverlay() {
+        showMetrics = !showMetrics;
+    }
+
+    @Override
+    public void stop() {
+        try {
+            renderer.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Switches the controlling terminal to unbuffered, no-echo input so single keystrokes
+     * reach the game immediately, and restores it when the JVM exits. Does nothing if there
+     * is no terminal or stty is unavailable; input then arrives a line at a time.
+     */
+    static void enableRawMode() {
+        if (System.console() == null || !stty("-icanon", "-echo", "min", "1")) {
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stty("sane"), "restore-tty"));
+    }
+
+    private static boolean stty(String... args) {
+        String[] cmd = new String[args.length + 1];
+        cmd[0] = "stty";
+        System.arraycopy(args, 0, cmd, 1, args.length);
+        try {
+            Process p = new ProcessBuilder(cmd).redirectInput(new File("/dev/tty")).start();
+            return p.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package core;
+
+import tileengine.Tileset;
+import utils.Varint;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The tiles a game has changed relative to the world its seed generates, in a compact
+ * form for saves. Since the world for a seed is always the same, a save only has to hold
+ * these differences, and its size grows with what the player changed rather than with
+ * the size of the map.
+ *
+ * A delta is a TileDiff, usually between a level as generated and as it is now, written
+ * out. Cells are numbered column by column (index x * height + y, the order of the grid
+ * arrays). The changed cells are stored as runs, each one
+ *
+ *   varint  cells skipped since the end of the previous run
+ *   varint  run length, at least 1
+ *   varint  tile id of each cell in the run
+ *
+ * and a run of length 0 ends the list. Only tile ids are stored, so a restored cell gets
+ * the plain Tileset tile for its id.
+ */
+final class TileDelta {
+    private TileDelta() {
+    }
+
+    /**
+     * Encodes the cells of world that differ from baseline. Both grids must be the same size.
+     */
+    static byte[] encode(TileGrid baseline, TileGrid world) {
+        return encode(TileDiff.between(baseline, world));
+    }
+
+    static byte[] encode(TileDiff diff) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            int runEnd = 0;
+            int i = 0;
+            while (i < diff.size()) {
+                int start = diff.cell(i);
+                int j = i + 1;
+                while (j < diff.size() && diff.cell(j) == start + (j - i)) {
+                    j++;
+                }
+                Varint.writeUnsignedInt(out, start - runEnd);
+                Varint.writeUnsignedInt(out, j - i);
+                for (int k = i; k < j; k++) {
+                    Varint.writeUnsignedInt(out, diff.id(k));
+                }
+                runEnd = start + (j - i);
+                i = j;
+            }
+            Varint.writeUnsignedInt(out, 0);
+            Varint.writeUnsignedInt(out, 0);
+        } catch (IOException e) {
+            throw new AssertionError("ByteArrayOutputStream does not throw", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a delta for a grid of the given size. Apply the result with TileDiff.applyTo().
+     * @throws IOException if delta is truncated, runs past the grid or names an unknown tile
+     */
+    static TileDiff decode(byte[] delta, int width, int height) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        long cells = (long) width * height;
+        int[] changed = new int[16];
+        byte[] ids = new byte[16];
+        int count = 0;
+        long i = 0;
+        try {
+            while (true) {
+                int skip = Varint.readUnsignedInt(in);
+                int length = Varint.readUnsignedInt(in);
+                if (length == 0) {
+                    return new TileDiff(width, height, Arrays.copyOf(changed, count), Arrays.copyOf(ids, count));
+                }
+                i += skip;
+                if (skip < 0 || length < 0 || i + length > cells) {
+                    throw new IOException("Corrupt tile delta: run past end of world");
+                }
+                for (int j = 0; j < length; j++, i++) {
+                    int id = Varint.readUnsignedInt(in);
+                    if (Tileset.byId(id) == null) {
+                        throw new IOException("Corrupt tile delta: unknown tile id " + id);
+                    }
+                    if (count == changed.length) {
+                        changed = Arrays.copyOf(changed, count * 2);
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    changed[count] = (int) i;
+                    ids[count] = (byte) id;
+                    count++;
+                }
+            }
+        } catch (EOFException e) {
+            throw new IOException("Corrupt tile delta: truncated", e);
+        }
+    }
+}
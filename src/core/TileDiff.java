@@ -0,0 +1,147 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.util.Arrays;
+
+/**
+ * The tiles that differ between two grids of the same size: which cells changed, and the
+ * tile id each one has in the newer grid. Cells are numbered column by column, index
+ * x * height + y, and listed in that order. TileDelta turns a diff into bytes and back.
+ *
+ * between() never looks at tiles one by one. Chunks the two grids share (see TileGrid)
+ * are skipped outright, and the rest are compared a long at a time, eight packed ids per
+ * comparison; only the bytes of words that differ are examined. Diffing a grid against a
+ * snapshot of itself therefore costs one reference comparison per chunk plus a little per
+ * changed chunk, however large the map.
+ */
+final class TileDiff {
+    private final int width;
+    private final int height;
+    private final int[] cells;
+    private final byte[] ids;
+
+    TileDiff(int width, int height, int[] cells, byte[] ids) {
+        this.width = width;
+        this.height = height;
+        this.cells = cells;
+        this.ids = ids;
+    }
+
+    /**
+     * @return the cells where to differs from from; both must be the same size
+     */
+    static TileDiff between(TileGrid from, TileGrid to) {
+        int width = to.width();
+        int height = to.height();
+        if (from.width() != width || from.height() != height) {
+            throw new IllegalArgumentException("Grids differ in size: " + from.width() + "x" + from.height()
+                    + " and " + width + "x" + height);
+        }
+        int[] cells = new int[16];
+        byte[] ids = new byte[16];
+        int count = 0;
+        int[] changedRows = new int[to.chunkRows()];
+        for (int cx = 0; cx < to.chunkColumns(); cx++) {
+            int changed = 0;
+            for (int cy = 0; cy < to.chunkRows(); cy++) {
+                if (from.chunk(cx, cy) != to.chunk(cx, cy)) {
+                    changedRows[changed++] = cy;
+                }
+            }
+            if (changed == 0) {
+                continue;
+            }
+            // Go column by column, and down each column chunk by chunk, so cells come out
+            // in index order. A chunk column is CHUNK ids, CHUNK / 8 words.
+            int x1 = Math.min(width, (cx + 1) << TileGrid.CHUNK_BITS);
+            for (int x = cx << TileGrid.CHUNK_BITS; x < x1; x++) {
+                int firstWord = (x & (TileGrid.CHUNK - 1)) * (TileGrid.CHUNK / 8);
+                for (int r = 0; r < changed; r++) {
+                    int cy = changedRows[r];
+                    long[] a = from.chunk(cx, cy);
+                    long[] b = to.chunk(cx, cy);
+                    for (int w = 0; w < TileGrid.CHUNK / 8; w++) {
+                        long diff = a[firstWord + w] ^ b[firstWord + w];
+                        while (diff != 0) {
+                            int shift = Long.numberOfTrailingZeros(diff) & ~7;
+                            diff &= ~(0xFFL << shift);
+                            int y = (cy << TileGrid.CHUNK_BITS) + w * 8 + (shift >>> 3);
+                            if (y >= height) {
+                                break;
+                            }
+                            if (count == cells.length) {
+                                cells = Arrays.copyOf(cells, count * 2);
+                                ids = Arrays.copyOf(ids, count * 2);
+                            }
+                            cells[count] = x * height + y;
+                            ids[count] = (byte) (b[firstWord + w] >>> shift);
+                            count++;
+                        }
+                    }
+                }
+            }
+        }
+        return new TileDiff(width, height, Arrays.copyOf(cells, count), Arrays.copyOf(ids, count));
+    }
+
+    /**
+     * @return the number of changed tiles
+     */
+    int size() {
+        return cells.length;
+    }
+
+    boolean isEmpty() {
+        return cells.length == 0;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    /**
+     * @return the index (x * height + y) of the i-th changed cell, in increasing order
+     */
+    int cell(int i) {
+        return cells[i];
+    }
+
+    /**
+     * @return the new tile id of the i-th changed cell
+     */
+    int id(int i) {
+        return ids[i] & 0xFF;
+    }
+
+    /**
+     * Writes the changed tiles into grid, which should hold what the diff was taken from.
+     */
+    void applyTo(TileGrid grid) {
+        checkSize(grid.width(), grid.height());
+        for (int i = 0; i < cells.length; i++) {
+            grid.set(cells[i] / height, cells[i] % height, Tileset.byId(id(i)));
+        }
+    }
+
+    /**
+     * Writes the changed tiles into world, which should hold what the diff was taken from.
+     */
+    void applyTo(TETile[][] world) {
+        checkSize(world.length, world.length == 0 ? 0 : world[0].length);
+        for (int i = 0; i < cells.length; i++) {
+            world[cells[i] / height][cells[i] % height] = Tileset.byId(id(i));
+        }
+    }
+
+    private void checkSize(int w, int h) {
+        if (w != width || h != height) {
+            throw new IllegalArgumentException("Diff is for a " + width + "x" + height + " grid, not " + w + "x" + h);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A grid of tiles with O(1) snapshots.
+ *
+ * The map is cut into CHUNK x CHUNK chunks. Each chunk is a long[] of tile ids packed one
+ * byte per cell, eight cells to a long, column by column within the chunk like the grid
+ * arrays. A snapshot shares every chunk, and the table of chunks, with the grid it was
+ * taken from. The first write to either one afterwards copies the table (one reference
+ * per chunk), and each write copies the chunk it lands in unless this grid already copied
+ * it. Taking a snapshot is O(1), and two grids take extra memory only for the chunks
+ * they differ in, which also lets TileDiff skip every shared chunk without looking
+ * inside.
+ *
+ * Only ids are stored, so get() gives back the Tileset tile for each id, as TileDelta
+ * does. Cells past the edge of the map in the last row and column of chunks hold id 0 and
+ * are never read.
+ *
+ * A grid is not thread-safe, but a snapshot nobody writes to never changes, so it can be
+ * handed to another thread and read there while the original keeps changing.
+ */
+final class TileGrid {
+    static final int CHUNK_BITS = 4;
+    static final int CHUNK = 1 << CHUNK_BITS;
+    // Longs per chunk: CHUNK * CHUNK cells at 8 per long.
+    static final int CHUNK_WORDS = CHUNK * CHUNK / 8;
+
+    private final int width;
+    private final int height;
+    // Chunks per column of chunks; chunk (cx, cy) is chunks[cx * chunkRows + cy].
+    private final int chunkColumns;
+    private final int chunkRows;
+    private long[][] chunks;
+    // True while the chunk table may be shared with a snapshot.
+    private boolean tableShared;
+    // owned[i] is true if chunks[i] was copied for this grid after the table was, so no
+    // other grid can see it. Null while the table is shared.
+    private boolean[] owned;
+
+    private TileGrid(int width, int height, long[][] chunks, boolean[] owned) {
+        this.width = width;
+        this.height = height;
+        this.chunkColumns = (width + CHUNK - 1) >>> CHUNK_BITS;
+        this.chunkRows = (height + CHUNK - 1) >>> CHUNK_BITS;
+        this.chunks = chunks;
+        this.owned = owned;
+        this.tableShared = owned == null;
+    }
+
+    /**
+     * @return a grid holding the tiles of world, which must be rectangular
+     */
+    static TileGrid of(TETile[][] world) {
+        int width = world.length;
+        int height = width == 0 ? 0 : world[0].length;
+        int chunkColumns = (width + CHUNK - 1) >>> CHUNK_BITS;
+        int chunkRows = (height + CHUNK - 1) >>> CHUNK_BITS;
+        long[][] chunks = new long[chunkColumns * chunkRows][CHUNK_WORDS];
+        boolean[] owned = new boolean[chunks.length];
+        Arrays.fill(owned, true);
+        TileGrid grid = new TileGrid(width, height, chunks, owned);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                grid.set(x, y, world[x][y]);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * @return a grid with the same tiles as this one now, which later writes to either
+     *         grid don't affect
+     */
+    TileGrid snapshot() {
+        tableShared = true;
+        owned = null;
+        return new TileGrid(width, height, chunks, null);
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    TETile get(int x, int y) {
+        return Tileset.byId(id(x, y));
+    }
+
+    /**
+     * @return the id of the tile at (x, y), as TETile.id()
+     */
+    int id(int x, int y) {
+        Objects.checkIndex(x, width);
+        Objects.checkIndex(y, height);
+        int k = cell(x, y);
+        return (int) (chunks[chunkIndex(x, y)][k >>> 3] >>> ((k & 7) << 3)) & 0xFF;
+    }
+
+    /**
+     * Puts a tile at (x, y), copying its chunk first if a snapshot shares it.
+     * @throws IllegalArgumentException if the tile's id doesn't fit in a byte
+     */
+    void set(int x, int y, TETile tile) {
+        Objects.checkIndex(x, width);
+        Objects.checkIndex(y, height);
+        int id = tile.id();
+        if (id < 0 || id > 0xFF) {
+            throw new IllegalArgumentException("Tile id " + id + " out of range");
+        }
+        if (tableShared) {
+            chunks = chunks.clone();
+            owned = new boolean[chunks.length];
+            tableShared = false;
+        }
+        int c = chunkIndex(x, y);
+        if (!owned[c]) {
+            chunks[c] = chunks[c].clone();
+            owned[c] = true;
+        }
+        long[] words = chunks[c];
+        int k = cell(x, y);
+        int shift = (k & 7) << 3;
+        words[k >>> 3] = (words[k >>> 3] & ~(0xFFL << shift)) | ((long) id << shift);
+    }
+
+    /**
+     * Copies every tile into world, which must be the same size.
+     */
+    void copyInto(TETile[][] world) {
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                world[x][y] = get(x, y);
+            }
+        }
+    }
+
+    int chunkColumns() {
+        return chunkColumns;
+    }
+
+    int chunkRows() {
+        return chunkRows;
+    }
+
+    /**
+     * Returns the packed ids of chunk (cx, cy), which the caller must not modify. Two grids
+     * return the same array for a chunk they share.
+     */
+    long[] chunk(int cx, int cy) {
+        return chunks[cx * chunkRows + cy];
+    }
+
+    private int chunkIndex(int x, int y) {
+        return (x >>> CHUNK_BITS) * chunkRows + (y >>> CHUNK_BITS);
+    }
+
+    // Index of (x, y) within its chunk.
+    private static int cell(int x, int y) {
+        return ((x & (CHUNK - 1)) << CHUNK_BITS) | (y & (CHUNK - 1));
+    }
+}
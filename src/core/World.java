@@ -1,105 +1,257 @@
 package core;
 
-import java.awt.*;
 import java.util.*;
-import java.util.List;
 
 import tileengine.TETile;
 import tileengine.Tileset;
-import utils.RandomUtils;
 
 public class World {
     private final int width, height;
     private final long seed;
     private final Random random;
     private final TETile[][] world;
-    private final List<Room> rooms;
-    private final List<Hallway> hallways;
-
-    private static final int MIN_ROOM_W = 6;
-    private static final int MAX_ROOM_W = 14;
-    private static final int MIN_ROOM_H = 6;
-    private static final int MAX_ROOM_H = 12;
-    private static final int TARGET_ROOMS = 8;
-    private static final int MAX_ATTEMPTS = 1000;
+    private final WorldGenerator.Kind generator;
+    private final Layout layout;
+
+    /**
+     * The knobs that shape a layout: how many rooms to place first, the floor fill ratio to
+     * keep adding rooms until, and the most extra rooms to add for it. The BSP generator
+     * only uses the fill ratio, as the size its rooms aim for.
+     */
+    public record Tuning(int targetRooms, double minFillRatio, int maxExtraRooms) {
+        public static final Tuning DEFAULT = new Tuning(8, 0.7, 100);
+    }
 
-    private static final double MIN_FILL_RATIO = 0.7;
-    private static final int MAX_EXTRA_ROOMS = 100;
+    private final Tuning tuning;
 
     private static final int COIN_COUNT = 10;
     private int placedCoins = 0;
+    // Coin i sits at (coinX[i], coinY[i]); coinOrdinals[x][y] is i, or -1 where there's no coin.
+    private int[] coinX = new int[0];
+    private int[] coinY = new int[0];
+    // The ground each coin was put on, which is left behind when it is collected.
+    private TETile[] coinGround = new TETile[0];
+    private final int[][] coinOrdinals;
+    // Coins by position for nearest and range queries; a coin's entity id is its ordinal.
+    private final SpatialIndex entities;
     private static final int LOS_RADIUS = 8;
     private boolean[][] visible;
 
     public World(int width, int height, long seed) {
+        this(width, height, seed, Tuning.DEFAULT);
+    }
+
+    public World(int width, int height, long seed, Tuning tuning) {
+        this(width, height, seed, tuning, WorldGenerator.Kind.ROOMS);
+    }
+
+    public World(int width, int height, long seed, WorldGenerator.Kind generator) {
+        this(width, height, seed, Tuning.DEFAULT, generator);
+    }
+
+    /**
+     * @param generator lays out rooms and hallways; the same seed gives different worlds
+     *                  with different generators
+     */
+    public World(int width, int height, long seed, Tuning tuning, WorldGenerator.Kind generator) {
+        this.tuning = tuning;
         this.width = width;
         this.height = height;
         this.seed = seed;
+        this.generator = generator;
         this.random = new Random(seed);
         this.world = new TETile[width][height];
-        this.rooms = new ArrayList<>();
-        this.hallways = new ArrayList<>();
         visible = new boolean[width][height];
+        coinOrdinals = new int[width][height];
+        entities = new SpatialIndex(width, height);
         initializeWorld();
+        layout = new Layout(world);
+    }
+
+    // A copy of other, generated, over tiles, which must hold the same tiles as other's world.
+    private World(World other, TETile[][] tiles) {
+        this.tuning = other.tuning;
+        this.width = other.width;
+        this.height = other.height;
+        this.seed = other.seed;
+        this.generator = other.generator;
+        this.random = other.random;
+        this.world = tiles;
+        this.visible = new boolean[width][height];
+        this.coinOrdinals = other.coinOrdinals;
+        this.entities = new SpatialIndex(other.entities);
+        this.layout = other.layout;
+        this.placedCoins = other.placedCoins;
+        this.coinX = other.coinX;
+        this.coinY = other.coinY;
+        this.coinGround = other.coinGround;
+    }
+
+    /**
+     * Returns a copy of this generated world that plays over the given tiles, a copy of
+     * the ones generate() returned. It has its own coin index and line of sight; the rest
+     * no longer changes once the world is generated, and is shared.
+     */
+    World copyOnto(TETile[][] tiles) {
+        return new World(this, tiles);
     }
 
     private void initializeWorld() {
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
                 world[x][y] = Tileset.NOTHING;
+                coinOrdinals[x][y] = -1;
             }
         }
     }
 
     public TETile[][] generate() {
-        placeRooms();
-        connectRoomsWithMST();
-        int extra = 0;
-        while (calculateFillRatio() < MIN_FILL_RATIO && extra < MAX_EXTRA_ROOMS) {
-            boolean added = addAdditionalRoom();
-            if (!added) {
-                break;  // no space for more rooms
-            }
-            extra++;
-        }
-        drawWalls();
+        generator.create(tuning).generate(layout, random);
+        layout.drawWalls();
         placeCoins();
         return world;
     }
 
+    // Puts coins on the first COIN_COUNT distinct tiles of a shuffled list of room and
+    // hallway floor, then on random ground tiles if there weren't enough. Tiles where rooms
+    // and hallways overlap are listed more than once, so repeats are skipped.
     private void placeCoins() {
-        List<Point> floors = new ArrayList<>();
-        for (Room r : rooms) {
-            floors.addAll(r.floorTiles());
-        }
-        for (Hallway h : hallways) {
-            floors.addAll(h.getPath());
-        }
+        List<int[]> floors = Arrays.asList(layout.floorTiles());
         Collections.shuffle(floors, random);
-        int count = Math.min(COIN_COUNT, floors.size());
-        for (int i = 0; i < count; i++) {
-            Point p = floors.get(i);
-            world[p.getX()][p.getY()] = Tileset.COIN;
-            placedCoins++;
+        coinX = new int[COIN_COUNT];
+        coinY = new int[COIN_COUNT];
+        coinGround = new TETile[COIN_COUNT];
+        for (int i = 0; i < floors.size() && placedCoins < COIN_COUNT; i++) {
+            int x = floors.get(i)[0];
+            int y = floors.get(i)[1];
+            if (world[x][y] != Tileset.COIN) {
+                placeCoin(x, y);
+            }
         }
+        // Ground painted directly can cover most of a large map, so rather than shuffle all
+        // of it, draw cells one at a time (a partial Fisher-Yates shuffle).
+        int[] ground = layout.groundCells();
+        for (int i = 0; i < ground.length && placedCoins < COIN_COUNT; i++) {
+            int j = i + random.nextInt(ground.length - i);
+            int cell = ground[j];
+            ground[j] = ground[i];
+            placeCoin(cell / height, cell % height);
+        }
+        coinX = Arrays.copyOf(coinX, placedCoins);
+        coinY = Arrays.copyOf(coinY, placedCoins);
+        coinGround = Arrays.copyOf(coinGround, placedCoins);
+    }
+
+    private void placeCoin(int x, int y) {
+        coinGround[placedCoins] = world[x][y];
+        world[x][y] = Tileset.COIN;
+        coinX[placedCoins] = x;
+        coinY[placedCoins] = y;
+        coinOrdinals[x][y] = placedCoins;
+        entities.add(SpatialIndex.Type.COIN, x, y);
+        placedCoins++;
     }
 
     public int getCoinCount() {
         return placedCoins;
     }
 
+    /**
+     * @return rooms placed by generate(), including extra rooms added to reach the fill ratio
+     */
+    public int getRoomCount() {
+        return layout.roomCount();
+    }
+
+    /**
+     * @return rooms generate() added after the first targetRooms to reach the fill ratio
+     */
+    public int getExtraRoomCount() {
+        return layout.extraRoomCount();
+    }
+
+    /**
+     * @return total length of all hallways, in tiles (tiles shared with rooms included)
+     */
+    public int getHallwayLength() {
+        return layout.hallwayLength();
+    }
+
+    /**
+     * @return the fill ratio generate() reached, as it measures it: room and hallway
+     *         tiles (overlaps counted twice) over the area of the map
+     */
+    public double getFillRatio() {
+        return layout.fillRatio();
+    }
+
+    public WorldGenerator.Kind getGenerator() {
+        return generator;
+    }
+
+    /**
+     * @return the index of the objects in this world; games remove coins from it as they
+     *         are collected
+     */
+    public SpatialIndex getEntities() {
+        return entities;
+    }
+
+    /**
+     * Returns the ordinal of the coin placed at (x, y), i.e. the order placeCoins put it
+     * down in. Ordinals run from 0 to getCoinCount() - 1 and are the same every time the
+     * same seed is generated, so they identify coins in saves.
+     * @return the coin's ordinal, or -1 if no coin was placed there
+     */
+    public int getCoinOrdinal(int x, int y) {
+        if (!inBounds(x, y)) {
+            return -1;
+        }
+        return coinOrdinals[x][y];
+    }
+
+    /**
+     * @return the x coordinate of the coin with the given ordinal
+     */
+    public int getCoinX(int ordinal) {
+        return coinX[ordinal];
+    }
+
+    /**
+     * @return the y coordinate of the coin with the given ordinal
+     */
+    public int getCoinY(int ordinal) {
+        return coinY[ordinal];
+    }
+
+    /**
+     * @return the ground tile under the coin with the given ordinal: FLOOR indoors, or the
+     *         grass, sand or flowers it was placed on outdoors
+     */
+    public TETile getCoinGround(int ordinal) {
+        return coinGround[ordinal];
+    }
+
     public void updateLineOfSight(int playerX, int playerY) {
+        updateLineOfSight(playerX, playerY, LOS_RADIUS);
+    }
+
+    /**
+     * Marks the tiles within radius of the player that no wall hides as visible, and every
+     * other tile as not.
+     */
+    public void updateLineOfSight(int playerX, int playerY, int radius) {
         for (int x = 0; x < width; x++) {
             for (int y = 0; y < height; y++) {
                 visible[x][y] = false;
             }
         }
 
-        for (int dx = -LOS_RADIUS; dx <= LOS_RADIUS; dx++) {
-            for (int dy = -LOS_RADIUS; dy <= LOS_RADIUS; dy++) {
+        for (int dx = -radius; dx <= radius; dx++) {
+            for (int dy = -radius; dy <= radius; dy++) {
                 int tx = playerX + dx;
                 int ty = playerY + dy;
-                if (inBounds(tx, ty) && distance(playerX, playerY, tx, ty) <= LOS_RADIUS) {
+                if (inBounds(tx, ty) && distance(playerX, playerY, tx, ty) <= radius) {
                     if (hasWallBetween(playerX, playerY, tx, ty)) {
                         continue; // wall blocking view
                     }
@@ -122,7 +274,7 @@ public class World {
     }
 
     private boolean isWall(int x, int y) {
-        return world[x][y] == Tileset.WALL;
+        return Rules.blocksSight(world[x][y]);
     }
 
     private boolean inBounds(int x, int y) {
@@ -136,273 +288,4 @@ public class World {
     public boolean[][] getVisibility() {
         return visible;
     }
-
-    private void placeRooms() {
-        int attempts = 0;
-        while (rooms.size() < TARGET_ROOMS && attempts < MAX_ATTEMPTS) {
-            // use the helper to generate room candidates
-            Room r = createRandomRoom();
-            if (r != null) {
-                rooms.add(r);
-                r.carve(world);
-            }
-            attempts++;
-        }
-    }
-
-    private Room createRandomRoom() {
-        int rw = RandomUtils.uniform(random, MIN_ROOM_W, MAX_ROOM_W + 1);
-        int rh = RandomUtils.uniform(random, MIN_ROOM_H, MAX_ROOM_H + 1);
-        int rx = RandomUtils.uniform(random, 1, width - rw - 1);
-        int ry = RandomUtils.uniform(random, 1, height - rh - 1);
-        Room candidate = new Room(rx, ry, rw, rh);
-        for (Room existing : rooms) {
-            if (candidate.overlaps(existing)) {
-                return null;
-            }
-        }
-        return candidate;
-    }
-
-    // Connect all rooms using a Minimum Spanning Tree (Prim's algorithm)
-    private void connectRoomsWithMST() {
-        if (rooms.isEmpty()) {
-            return;
-        }
-        Set<Room> connected = new HashSet<>();
-        Set<Room> remaining = new HashSet<>(rooms);
-        // start with first room
-        Room start = rooms.get(0);
-        connected.add(start);
-        remaining.remove(start);
-
-        while (!remaining.isEmpty()) {
-            Room bestA = null, bestB = null;
-            int bestDist = Integer.MAX_VALUE;
-            // Find closest pair (a in connected, b in remaining)
-            for (Room a : connected) {
-                for (Room b : remaining) {
-                    int dist = Math.abs(a.centerX() - b.centerX()) + Math.abs(a.centerY() - b.centerY());
-                    if (dist < bestDist) {
-                        bestDist = dist;
-                        bestA = a;
-                        bestB = b;
-                    }
-                }
-            }
-            connectPair(bestA, bestB);
-            connected.add(bestB);
-            remaining.remove(bestB);
-        }
-    }
-
-    private void connectPair(Room a, Room b) {
-        Point p1 = a.randomPoint(random);
-        Point p2 = b.randomPoint(random);
-        Hallway h = Hallway.buildLShaped(p1, p2, random.nextBoolean());
-        hallways.add(h);
-        h.carve(world);
-    }
-
-    private double calculateFillRatio() {
-        int floorCount = 0;
-        for (Room r : rooms) {
-            floorCount += r.floorTiles().size();
-        }
-        for (Hallway h : hallways) {
-            floorCount += h.getPath().size();
-        }
-        return (double) floorCount / (width * height);
-    }
-
-    // attempts to place and connect one extra room.
-    private boolean addAdditionalRoom() {
-        for (int i = 0; i < MAX_ATTEMPTS; i++) {
-            Room r = createRandomRoom();
-            if (r != null) {
-                rooms.add(r);
-                r.carve(world);
-                Room nearest = findNearestRoom(r);
-                connectPair(nearest, r);
-                return true;
-            }
-        }
-        return false;
-    }
-
-    // finds the closest room to target for connecting.
-    private Room findNearestRoom(Room target) {
-        Room nearest = null;
-        int bestDist = Integer.MAX_VALUE;
-        for (Room r : rooms) {
-            if (r == target) {
-                continue;
-            }
-            int dist = Math.abs(r.centerX() - target.centerX())
-                    + Math.abs(r.centerY() - target.centerY());
-            if (dist < bestDist) {
-                bestDist = dist;
-                nearest = r;
-            }
-        }
-        return nearest;
-    }
-
-    private void drawWalls() {
-        Set<Point> floors = new HashSet<>();
-        for (Room r : rooms) {
-            floors.addAll(r.floorTiles());
-        }
-        for (Hallway h : hallways) {
-            floors.addAll(h.getPath());
-        }
-        for (Point p : floors) {
-            for (Point n : p.neighbors()) {
-                if (inBounds(n) && world[n.getX()][n.getY()] == Tileset.NOTHING) {
-                    world[n.getX()][n.getY()] = Tileset.WALL;
-                }
-            }
-        }
-    }
-
-    private boolean inBounds(Point p) {
-        return p.getX() >= 0 && p.getX() < width && p.getY() >= 0 && p.getY() < height;
-    }
-
-    // --- Nested helper classes ---
-
-    private static class Room {
-        private final int x;
-        private final int y;
-        private final int width;
-        private final int height;
-
-        Room(int x, int y, int width, int height) {
-            this.x = x;
-            this.y = y;
-            this.width = width;
-            this.height = height;
-        }
-        boolean overlaps(Room o) {
-            return (x - 1 < o.x + o.width + 1 && x + width + 1 > o.x - 1
-                    &&
-                    y - 1 < o.y + o.height + 1 && y + height + 1 > o.y - 1);
-        }
-        List<Point> floorTiles() {
-            List<Point> list = new ArrayList<>();
-            for (int i = x + 1; i < x + width - 1; i++) {
-                for (int j = y + 1; j < y + height - 1; j++) {
-                    list.add(new Point(i, j));
-                }
-            }
-            return list;
-        }
-        Point randomPoint(Random rand) {
-            int px = rand.nextInt(width - 2) + x + 1;
-            int py = rand.nextInt(height - 2) + y + 1;
-            return new Point(px, py);
-        }
-        void carve(TETile[][] world) {
-            for (Point p : floorTiles()) {
-                world[p.getX()][p.getY()] = Tileset.FLOOR;
-            }
-        }
-
-        int centerX() {
-            return x + width / 2;
-        }
-
-        int centerY() {
-            return y + height / 2;
-        }
-
-    }
-
-    private static class Hallway {
-        private final List<Point> path;
-        private Hallway(List<Point> path) {
-            this.path = path;
-        }
-
-        static Hallway buildLShaped(Point p1, Point p2, boolean horizontalFirst) {
-            List<Point> pts = new ArrayList<>();
-            pts.add(p1);
-            if (horizontalFirst) {
-                int dx = Integer.signum(p2.getX() - p1.getX());
-                int x = p1.getX();
-                while (x != p2.getX()) {
-                    x += dx;
-                    pts.add(new Point(x, p1.getY()));
-                }
-                int dy = Integer.signum(p2.getY() - p1.getY());
-                int y = p1.getY();
-                while (y != p2.getY()) {
-                    y += dy;
-                    pts.add(new Point(p2.getX(), y));
-                }
-            } else {
-                int dy = Integer.signum(p2.getY() - p1.getY());
-                int y = p1.getY();
-                while (y != p2.getY()) {
-                    y += dy;
-                    pts.add(new Point(p1.getX(), y));
-                }
-                int dx = Integer.signum(p2.getX() - p1.getX());
-                int x = p1.getX();
-                while (x != p2.getX()) {
-                    x += dx;
-                    pts.add(new Point(x, p2.getY()));
-                }
-            }
-            return new Hallway(pts);
-        }
-        void carve(TETile[][] world) {
-            for (Point p : path) {
-                world[p.getX()][p.getY()] = Tileset.FLOOR;
-            }
-        }
-        List<Point> getPath() {
-            return path;
-        }
-
-    }
-
-    private static class Point {
-        private final int x;
-        private final int y;
-        Point(int x, int y) {
-            this.x = x;
-            this.y = y;
-        }
-
-        int getX() {
-            return x;
-        }
-
-        int getY() {
-            return y;
-        }
-
-        List<Point> neighbors() {
-            return Arrays.asList(
-                    new Point(x + 1, y), new Point(x - 1, y),
-                    new Point(x, y + 1), new Point(x, y - 1)
-            );
-        }
-        @Override public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (!(o instanceof Point)) {
-                return false;
-            }
-            Point p = (Point) o;
-            return p.x == x && p.y == y;
-        }
-        @Override public int hashCode() {
-            return Objects.hash(x, y);
-        }
-    }
 }
-
-
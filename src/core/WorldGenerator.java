@@ -0,0 +1,43 @@
+package core;
+
+import java.util.Random;
+
+/**
+ * Lays out the rooms and hallways of a world. World runs one per generate(): it hands the
+ * generator an empty Layout and the world's Random, then draws walls and places coins on
+ * whatever floor the generator carved. A generator must draw all of its randomness from
+ * that Random, so the same seed always produces the same world.
+ */
+public interface WorldGenerator {
+    /** The available generators. Saves store the ordinal, so only add to the end. */
+    enum Kind {
+        /** Rooms at random positions, retried until they fit, joined by a spanning tree. */
+        ROOMS,
+        /** Binary space partitioning: one room per leaf, joined along the tree. */
+        BSP,
+        /** Open country shaped by noise and a cellular automaton, with no rooms at all. */
+        OUTDOOR;
+
+        WorldGenerator create(World.Tuning tuning) {
+            return switch (this) {
+                case ROOMS -> new RoomsGenerator(tuning);
+                case BSP -> new BspGenerator(tuning);
+                case OUTDOOR -> new OutdoorGenerator();
+            };
+        }
+
+        /**
+         * @return the kind with the given ordinal
+         * @throws IllegalArgumentException if there is none
+         */
+        static Kind byOrdinal(int ordinal) {
+            Kind[] kinds = values();
+            if (ordinal < 0 || ordinal >= kinds.length) {
+                throw new IllegalArgumentException("Unknown generator " + ordinal);
+            }
+            return kinds[ordinal];
+        }
+    }
+
+    void generate(Layout layout, Random random);
+}
@@ -0,0 +1,176 @@
+package core;
+
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ * Checks that a generated world is playable:
+ *
+ *  - all floor (ground tiles, see Rules.isGround, and coins) forms one connected area,
+ *    moving in four directions;
+ *  - every coin World placed is on the map and in the same area as the starting tile;
+ *  - no floor tile touches the map edge or an empty NOTHING tile, which the avatar could
+ *    walk out onto because only walls block movement.
+ *
+ * Connectivity comes from a union-find over cell indices (x * height + y), joining each
+ * floor cell with its floor neighbors to the left and below, so one pass over the grid
+ * counts components, leaks and coins together. The union-find and coin buffers belong to
+ * the validator and are reused for every world of the same size, so validating allocates
+ * nothing per cell. A validator is not thread-safe; use one per thread.
+ *
+ * Usage: java core.WorldValidator firstSeed count [rooms|bsp|outdoor], checks count
+ * seeds in parallel with the given generator (rooms by default) and prints each failing
+ * seed.
+ */
+class WorldValidator {
+    /** What validate() found. ok() is true for a playable world. */
+    record Report(int floorCells, int components, int coinTiles, int expectedCoins, int unreachableCoins,
+                  int leakingEdges) {
+        boolean ok() {
+            return components <= 1 && coinTiles == expectedCoins && unreachableCoins == 0 && leakingEdges == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "floor=" + floorCells + " components=" + components + " coins=" + coinTiles + "/"
+                    + expectedCoins + " unreachableCoins=" + unreachableCoins + " leakingEdges=" + leakingEdges;
+        }
+    }
+
+    private int[] parent = new int[0];
+    private int[] coins = new int[16];
+
+    /**
+     * @param expectedCoins how many coins the generator placed (World.getCoinCount())
+     */
+    Report validate(TETile[][] world, int expectedCoins) {
+        int width = world.length;
+        int height = world[0].length;
+        if (parent.length != width * height) {
+            parent = new int[width * height];
+        }
+
+        int floorCells = 0;
+        int unions = 0;
+        int coinTiles = 0;
+        int leaks = 0;
+        // The game starts on the first ground tile in row order (see Rules.findStartingPosition).
+        int start = -1;
+        int startOrder = Integer.MAX_VALUE;
+
+        TETile[] left = null;
+        for (int x = 0; x < width; x++) {
+            TETile[] column = world[x];
+            for (int y = 0; y < height; y++) {
+                TETile t = column[y];
+                if (!isFloor(t)) {
+                    continue;
+                }
+                int cell = x * height + y;
+                parent[cell] = cell;
+                floorCells++;
+                if (t == Tileset.COIN) {
+                    if (coinTiles == coins.length) {
+                        coins = Arrays.copyOf(coins, coinTiles * 2);
+                    }
+                    coins[coinTiles++] = cell;
+                } else if (y * width + x < startOrder) {
+                    startOrder = y * width + x;
+                    start = cell;
+                }
+
+                if (y > 0 && isFloor(column[y - 1]) && union(cell, cell - 1)) {
+                    unions++;
+                }
+                if (left != null && isFloor(left[y]) && union(cell, cell - height)) {
+                    unions++;
+                }
+                if (leaks(world, x, y)) {
+                    leaks++;
+                }
+            }
+            left = column;
+        }
+
+        int unreachable = 0;
+        if (start >= 0) {
+            int startRoot = find(start);
+            for (int i = 0; i < coinTiles; i++) {
+                if (find(coins[i]) != startRoot) {
+                    unreachable++;
+                }
+            }
+        } else {
+            unreachable = coinTiles;
+        }
+        return new Report(floorCells, floorCells - unions, coinTiles, expectedCoins, unreachable, leaks);
+    }
+
+    private static boolean isFloor(TETile t) {
+        return t == Tileset.COIN || Rules.isGround(t);
+    }
+
+    // A floor cell leaks if any of its four neighbors is off the map or empty.
+    private static boolean leaks(TETile[][] world, int x, int y) {
+        if (x == 0 || y == 0 || x == world.length - 1 || y == world[0].length - 1) {
+            return true;
+        }
+        return world[x][y - 1] == Tileset.NOTHING || world[x][y + 1] == Tileset.NOTHING
+                || world[x - 1][y] == Tileset.NOTHING || world[x + 1][y] == Tileset.NOTHING;
+    }
+
+    // Joins the sets of a and b; returns false if they were already joined. The smaller
+    // index becomes the root, so roots are stable and find() can halve paths as it goes.
+    private boolean union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) {
+            return false;
+        }
+        if (ra < rb) {
+            parent[rb] = ra;
+        } else {
+            parent[ra] = rb;
+        }
+        return true;
+    }
+
+    private int find(int c) {
+        while (parent[c] != c) {
+            parent[c] = parent[parent[c]];
+            c = parent[c];
+        }
+        return c;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java core.WorldValidator firstSeed count [rooms|bsp|outdoor]");
+            System.exit(1);
+        }
+        long first = Long.parseLong(args[0]);
+        long count = Long.parseLong(args[1]);
+        WorldGenerator.Kind generator = args.length > 2
+                ? WorldGenerator.Kind.valueOf(args[2].toUpperCase(Locale.ROOT)) : WorldGenerator.Kind.ROOMS;
+        ThreadLocal<WorldValidator> validators = ThreadLocal.withInitial(WorldValidator::new);
+        AtomicLong failures = new AtomicLong();
+        long begin = System.nanoTime();
+        LongStream.range(first, first + count).parallel().forEach(seed -> {
+            World worldGen = new World(GameSession.WIDTH, GameSession.HEIGHT, seed, generator);
+            TETile[][] world = worldGen.generate();
+            Report report = validators.get().validate(world, worldGen.getCoinCount());
+            if (!report.ok()) {
+                failures.incrementAndGet();
+                System.out.println("seed " + seed + ": " + report);
+            }
+        });
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("%d seeds, %d failed, %.1f s (%.0f seeds/s)%n", count, failures.get(),
+                elapsed / 1e9, count * 1e9 / elapsed);
+    }
+}
@@ -0,0 +1,154 @@
+package tileengine;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Renders tiles to a text terminal using ANSI escape codes, as an alternative to
+ * TERenderer for playing without a window (over SSH, for example).
+ *
+ * The first frame is drawn in full. After that the renderer remembers what it last drew
+ * and only emits the cells that changed, each prefixed by a cursor-position sequence when
+ * it doesn't directly follow the previous cell written. Color codes are only emitted when
+ * the color actually changes, so a frame where the avatar moved one tile costs a few dozen
+ * bytes rather than the whole map.
+ *
+ * Colors are written as 24-bit "truecolor" SGR sequences using each tile's text and
+ * background color. The renderer assumes every tile character occupies one terminal column.
+ *
+ * Rows are drawn top to bottom starting with y = height - 1, matching TERenderer.
+ */
+public class AnsiRenderer {
+    private static final String ESC = "\u001b[";
+
+    private final Writer out;
+    private final int width;
+    private final int height;
+    private final int yOffset;
+    private TETile[][] shown;
+    private Color currentFg;
+    private Color currentBg;
+    // 1-based terminal position the cursor is at, or row 0 if unknown.
+    private int cursorRow;
+    private int cursorCol;
+
+    /**
+     * @param out where escape sequences are written; flushed after each frame
+     * @param w width of the world in tiles
+     * @param h height of the world in tiles
+     * @param yOff number of terminal lines to leave free above the world (for a HUD)
+     */
+    public AnsiRenderer(Writer out, int w, int h, int yOff) {
+        this.out = out;
+        this.width = w;
+        this.height = h;
+        this.yOffset = yOff;
+    }
+
+    /**
+     * Draws the world, writing only the cells that differ from the previous frame.
+     * @param world the 2D TETile[][] array to render
+     * @return the number of cells written
+     */
+    public int renderFrame(TETile[][] world) throws IOException {
+        int written = 0;
+        if (shown == null) {
+            shown = new TETile[width][height];
+            out.write(ESC + "2J" + ESC + "?25l");
+            cursorRow = 0;
+        }
+        for (int y = height - 1; y >= 0; y -= 1) {
+            for (int x = 0; x < width; x += 1) {
+                TETile t = world[x][y];
+                if (t == null) {
+                    throw new IllegalArgumentException("Tile at position x=" + x + ", y=" + y
+                            + " is null.");
+                }
+                if (t == shown[x][y]) {
+                    continue;
+                }
+                moveTo(height - y + yOffset, x + 1);
+                setColors(t.textColor(), t.backgroundColor());
+                out.write(t.character());
+                cursorCol += 1;
+                shown[x][y] = t;
+                written++;
+            }
+        }
+        out.flush();
+        return written;
+    }
+
+    /**
+     * Writes a line of text on the given terminal line above the world, clearing the
+     * rest of that line.
+     * @param line 1-based line number, at most the yOff passed to the constructor
+     * @param text the text to write
+     */
+    public void renderText(int line, String text) throws IOException {
+        moveTo(line, 1);
+        setColors(Color.white, Color.black);
+        out.write(text);
+        out.write(ESC + "K");
+        cursorRow = 0;
+        out.flush();
+    }
+
+    /**
+     * Forgets the previous frame, so the next call to renderFrame redraws everything.
+     * Use after anything else has written to the terminal.
+     */
+    public void invalidate() {
+        shown = null;
+        currentFg = null;
+        currentBg = null;
+        cursorRow = 0;
+    }
+
+    /**
+     * Resets colors, shows the cursor and moves it below the world.
+     */
+    public void close() throws IOException {
+        out.write(ESC + "0m" + ESC + "?25h");
+        out.write(ESC + (height + yOffset + 1) + ";1H");
+        out.flush();
+        invalidate();
+    }
+
+    private void moveTo(int row, int col) throws IOException {
+        if (row == cursorRow && col == cursorCol) {
+            return;
+        }
+        out.write(ESC);
+        out.write(Integer.toString(row));
+        out.write(';');
+        out.write(Integer.toString(col));
+        out.write('H');
+        cursorRow = row;
+        cursorCol = col;
+    }
+
+    private void setColors(Color fg, Color bg) throws IOException {
+        if (!fg.equals(currentFg)) {
+            writeColor(38, fg);
+            currentFg = fg;
+        }
+        if (!bg.equals(currentBg)) {
+            writeColor(48, bg);
+            currentBg = bg;
+        }
+    }
+
+    private void writeColor(int kind, Color c) throws IOException {
+        out.write(ESC);
+        out.write(Integer.toString(kind));
+        out.write(";2;");
+        out.write(Integer.toString(c.getRed()));
+        out.write(';');
+        out.write(Integer.toString(c.getGreen()));
+        out.write(';');
+        out.write(Integer.toString(c.getBlue()));
+        out.write('m');
+    }
+}
@@ -1,8 +1,12 @@
 package tileengine;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.princeton.cs.algs4.StdDraw;
 import utils.RandomUtils;
@@ -28,6 +32,13 @@ public class TETile {
     private final String description;
     private final String filepath;
     private final int id;
+    private final String glyph;
+
+    // Shared color variants, see colorVariant. Bounded so that a caller feeding in
+    // arbitrary colors can't grow it without limit; past the cap variants are just
+    // allocated as before.
+    private static final int MAX_INTERNED_VARIANTS = 1 << 16;
+    private static final ConcurrentHashMap<Long, TETile> VARIANTS = new ConcurrentHashMap<>();
 
     /**
      * Full constructor for TETile objects.
@@ -45,6 +56,7 @@ public class TETile {
         this.description = description;
         this.filepath = filepath;
         this.id = id;
+        this.glyph = Character.toString(character);
     }
 
     /**
@@ -62,6 +74,7 @@ public class TETile {
         this.description = description;
         this.filepath = null;
         this.id = id;
+        this.glyph = Character.toString(character);
     }
 
     /**
@@ -107,7 +120,7 @@ public class TETile {
         StdDraw.setPenColor(backgroundColor);
         StdDraw.filledSquare(x + 0.5, y + 0.5, 0.5);
         StdDraw.setPenColor(textColor);
-        StdDraw.text(x + 0.5, y + 0.5, Character.toString(character()));
+        StdDraw.text(x + 0.5, y + 0.5, glyph);
     }
 
     /** Character representation of the tile. Used for drawing in text mode.
@@ -117,6 +130,22 @@ public class TETile {
         return character;
     }
 
+    /**
+     * Color of the tile's character.
+     * @return text color
+     */
+    public Color textColor() {
+        return textColor;
+    }
+
+    /**
+     * Color drawn behind the tile's character.
+     * @return background color
+     */
+    public Color backgroundColor() {
+        return backgroundColor;
+    }
+
     /**
      * Description of the tile. Useful for displaying mouseover text or
      * testing that two tiles represent the same type of thing.
@@ -138,6 +167,10 @@ public class TETile {
      * Creates a copy of the given tile with a slightly different text color. The new
      * color will have a red value that is within dr of the current red value,
      * and likewise with dg and db.
+     *
+     * Variants are interned: asking for the same tile in the same color again returns the
+     * same TETile object, so a textured floor costs one object per distinct color rather
+     * than one per cell. The random draws are unchanged, so worlds come out the same.
      * @param t the tile to copy
      * @param dr the maximum difference in red value
      * @param dg the maximum difference in green value
@@ -150,9 +183,28 @@ public class TETile {
         int newGreen = newColorValue(oldColor.getGreen(), dg, r);
         int newBlue = newColorValue(oldColor.getBlue(), db, r);
 
-        Color c = new Color(newRed, newGreen, newBlue);
+        int rgb = (newRed << 16) | (newGreen << 8) | newBlue;
+        long key = ((long) t.id << 40) | ((long) t.character << 24) | rgb;
+        TETile cached = VARIANTS.get(key);
+        if (cached != null && cached.isVariantOf(t)) {
+            return cached;
+        }
+
+        TETile variant = new TETile(t, new Color(rgb));
+        if (cached == null && VARIANTS.size() < MAX_INTERNED_VARIANTS) {
+            TETile raced = VARIANTS.putIfAbsent(key, variant);
+            if (raced != null && raced.isVariantOf(t)) {
+                return raced;
+            }
+        }
+        return variant;
+    }
 
-        return new TETile(t, c);
+    // True if this tile differs from t at most in text color. Guards the variant cache
+    // against distinct tiles that happen to share an id and character.
+    private boolean isVariantOf(TETile t) {
+        return character == t.character && backgroundColor.equals(t.backgroundColor)
+                && Objects.equals(description, t.description) && Objects.equals(filepath, t.filepath);
     }
 
     private static int newColorValue(int v, int dv, Random r) {
@@ -175,21 +227,46 @@ public class TETile {
     public static String toString(TETile[][] world) {
         int width = world.length;
         int height = world[0].length;
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder((width + 1) * height);
 
         for (int y = height - 1; y >= 0; y -= 1) {
             for (int x = 0; x < width; x += 1) {
-                if (world[x][y] == null) {
-                    throw new IllegalArgumentException("Tile at position x=" + x + ", y=" + y
-                            + " is null.");
-                }
-                sb.append(world[x][y].character());
+                sb.append(checkedTile(world, x, y).character());
             }
             sb.append('\n');
         }
         return sb.toString();
     }
 
+    /**
+     * Writes the same text as toString(world) to out one row at a time, without building
+     * the whole map in memory first. Useful for dumping large worlds to a file or socket.
+     * @param world the 2D world to print
+     * @param out where to write the rows
+     */
+    public static void write(TETile[][] world, Writer out) throws IOException {
+        int width = world.length;
+        int height = world[0].length;
+        char[] row = new char[width + 1];
+        row[width] = '\n';
+
+        for (int y = height - 1; y >= 0; y -= 1) {
+            for (int x = 0; x < width; x += 1) {
+                row[x] = checkedTile(world, x, y).character();
+            }
+            out.write(row);
+        }
+        out.flush();
+    }
+
+    private static TETile checkedTile(TETile[][] world, int x, int y) {
+        if (world[x][y] == null) {
+            throw new IllegalArgumentException("Tile at position x=" + x + ", y=" + y
+                    + " is null.");
+        }
+        return world[x][y];
+    }
+
     /**
      * Makes a copy of the given 2D tile array.
      * @param tiles the 2D array to copy
@@ -36,6 +36,27 @@ public class Tileset {
     public static final TETile CELL = new TETile('█', Color.white, Color.black, "cell", 12);
 
     public static  final TETile COIN = new TETile('C', Color.YELLOW, Color.BLACK, "coin", 13);
+
+    public static final TETile STAIRS_DOWN = new TETile('>', Color.white, Color.darkGray, "stairs down", 14);
+    public static final TETile STAIRS_UP = new TETile('<', Color.white, Color.darkGray, "stairs up", 15);
+
+    private static final TETile[] BY_ID = {
+        AVATAR, WALL, FLOOR, NOTHING, GRASS, WATER, FLOWER, LOCKED_DOOR, UNLOCKED_DOOR,
+        SAND, MOUNTAIN, TREE, CELL, COIN, STAIRS_DOWN, STAIRS_UP
+    };
+
+    /**
+     * Returns the tile constant with the given id, for turning ids read back from a save
+     * into tiles.
+     * @param id the tile id, as returned by TETile.id()
+     * @return the tile, or null if no tile has that id
+     */
+    public static TETile byId(int id) {
+        if (id < 0 || id >= BY_ID.length) {
+            return null;
+        }
+        return BY_ID[id];
+    }
 }
 
 
@@ -0,0 +1,54 @@
+package utils;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a loop to a fixed number of ticks per second. Each call to sync() parks the
+ * calling thread until the next tick deadline, so a loop that calls it once per iteration
+ * sleeps between frames instead of spinning.
+ *
+ * Deadlines advance by a fixed period rather than being measured from the end of the last
+ * frame, so small overruns do not accumulate drift. If the loop falls more than a full
+ * period behind (a long stall, a breakpoint), the schedule is reset instead of running a
+ * burst of catch-up ticks.
+ */
+public class FrameLimiter {
+    private final long periodNanos;
+    private long nextTick;
+
+    /**
+     * @param ticksPerSecond target loop rate, must be positive
+     */
+    public FrameLimiter(int ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("ticksPerSecond must be positive: " + ticksPerSecond);
+        }
+        this.periodNanos = 1_000_000_000L / ticksPerSecond;
+        this.nextTick = System.nanoTime();
+    }
+
+    /**
+     * Sleeps until the next tick deadline.
+     */
+    public void sync() {
+        nextTick += periodNanos;
+        long now = System.nanoTime();
+        long remaining = nextTick - now;
+        if (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            // parkNanos may return early; finish the wait so the tick rate stays fixed.
+            while ((remaining = nextTick - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remaining);
+            }
+        } else if (-remaining > periodNanos) {
+            nextTick = now;
+        }
+    }
+
+    /**
+     * @return the length of one tick in nanoseconds
+     */
+    public long periodNanos() {
+        return periodNanos;
+    }
+}
@@ -0,0 +1,104 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free histogram of non-negative long values, cheap enough to leave
+ * recording in normal play.
+ *
+ * Values are bucketed by their highest set bit, and each power of two is split into
+ * 2^SUB_BITS linear sub-buckets, so any recorded value is reported within 1/8 (12.5%) of
+ * its true magnitude. The whole range of long fits in under 500 buckets, allocated once;
+ * record() is a couple of bit operations and one atomic increment.
+ *
+ * Safe to record from one thread while another reads percentiles. Readers see a
+ * consistent-enough view for display, not an atomic snapshot.
+ */
+public class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one value. Negative values are recorded as 0.
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        total.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return the number of values recorded
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if none
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Returns an approximation of the given percentile: the lower bound of the bucket that
+     * holds it, which is within 12.5% of the true value.
+     * @param p percentile in the range [0, 100]
+     * @return the approximate value at that percentile, or 0 if nothing was recorded
+     */
+    public long percentile(double p) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(lowerBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_COUNT - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    private static long lowerBound(int bucket) {
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_COUNT + SUB_BITS - 1;
+        int sub = bucket % SUB_COUNT;
+        return (long) (SUB_COUNT + sub) << (magnitude - SUB_BITS);
+    }
+}
@@ -0,0 +1,99 @@
+package utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * LEB128-style variable-length integers: seven bits per byte, low bits first, with the
+ * high bit set on every byte but the last. Small non-negative values take one byte.
+ * Signed values should go through zigzag encoding first so small negatives stay small.
+ */
+public class Varint {
+    private Varint() {
+    }
+
+    /**
+     * Writes an unsigned int in 1 to 5 bytes.
+     */
+    public static void writeUnsignedInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Reads an unsigned int written by writeUnsignedInt.
+     * @throws IOException if the encoding is longer than 5 bytes
+     */
+    public static int readUnsignedInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Writes an unsigned long in 1 to 10 bytes.
+     */
+    public static void writeUnsignedLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads an unsigned long written by writeUnsignedLong.
+     * @throws IOException if the encoding is longer than 10 bytes
+     */
+    public static long readUnsignedLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Writes a signed int, zigzag encoded so values near zero take one byte.
+     */
+    public static void writeSignedInt(DataOutput out, int value) throws IOException {
+        writeUnsignedInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    /**
+     * Reads a signed int written by writeSignedInt.
+     */
+    public static int readSignedInt(DataInput in) throws IOException {
+        int raw = readUnsignedInt(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /**
+     * Writes a signed long, zigzag encoded so values near zero stay short.
+     */
+    public static void writeSignedLong(DataOutput out, long value) throws IOException {
+        writeUnsignedLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Reads a signed long written by writeSignedLong.
+     */
+    public static long readSignedLong(DataInput in) throws IOException {
+        long raw = readUnsignedLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
@@ -0,0 +1,47 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Checks when a Dungeon generates the level below ahead of time, and when it gives up on it.
+ */
+public class DungeonTest {
+    private static final long SEED = 8;
+
+    @Test
+    public void generatesAheadOnlyWhenAsked() throws IOException {
+        Dungeon dungeon = dungeon();
+        dungeon.enter(0);
+        assertThat(dungeon.isGeneratingAhead()).isFalse();
+
+        dungeon.generateAhead(0);
+        assertThat(dungeon.isGeneratingAhead()).isTrue();
+        Level below = dungeon.enter(1);
+        assertThat(dungeon.isGeneratingAhead()).isFalse();
+        Level expected = Level.generate(GameSession.WIDTH, GameSession.HEIGHT, SEED, WorldGenerator.Kind.ROOMS, 1);
+        assertThat(below.getWorld()).isEqualTo(expected.getWorld());
+    }
+
+    @Test
+    public void dropsTheLevelAheadWhenThePlayerGoesElsewhere() throws IOException {
+        Dungeon dungeon = dungeon();
+        dungeon.enter(0);
+        dungeon.enter(1);
+        dungeon.generateAhead(1);
+        dungeon.enter(0);
+        assertThat(dungeon.isGeneratingAhead()).isFalse();
+
+        // The level just left is cached, so there is nothing to generate.
+        dungeon.generateAhead(0);
+        assertThat(dungeon.isGeneratingAhead()).isFalse();
+    }
+
+    private static Dungeon dungeon() {
+        return new Dungeon(GameSession.WIDTH, GameSession.HEIGHT, SEED, WorldGenerator.Kind.ROOMS, Map.of());
+    }
+}
@@ -0,0 +1,211 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Plays games against a GameServer on an ephemeral loopback port and checks what it draws.
+ */
+public class GameServerTest {
+    private static final int TIMEOUT_MS = 10_000;
+
+    @Test
+    public void drawsTheSameWorldAsALocalSession() throws IOException {
+        long seed = 123;
+        String moves = "ddddwwwwaassssddddddwwaaaassdd";
+        GameSession local = GameSession.newGame(GameSession.WIDTH, GameSession.HEIGHT, seed);
+        Point start = local.getAvatarPosition();
+        for (char c : moves.toCharArray()) {
+            local.step(c);
+        }
+        assertThat(local.getAvatarPosition()).isNotEqualTo(start);
+        TETile[][] world = TETile.copyOf(local.getWorld());
+        world[local.getAvatarX()][local.getAvatarY()] = Tileset.AVATAR;
+        String[] expected = new String[GameSession.HEIGHT + 1];
+        expected[0] = "Coins: " + local.getCoinsCollected() + "/" + local.getTotalCoins();
+        for (int y = 0; y < GameSession.HEIGHT; y++) {
+            StringBuilder row = new StringBuilder();
+            for (int x = 0; x < GameSession.WIDTH; x++) {
+                row.append(world[x][y].character());
+            }
+            // Row y of the world is drawn on terminal line HEIGHT + 1 - y, below the HUD.
+            expected[GameSession.HEIGHT - y] = row.toString().stripTrailing();
+        }
+
+        try (GameServer server = new GameServer(0, 4)) {
+            server.start();
+            try (Socket socket = connect(server)) {
+                send(socket, seed + "s" + moves);
+                Reader in = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+                // Frames arrive a tick at a time; keep reading until the last move is drawn.
+                StringBuilder output = new StringBuilder();
+                Screen screen = new Screen(GameSession.HEIGHT + 1, GameSession.WIDTH);
+                char[] buffer = new char[4096];
+                try {
+                    while (!screen.shows(expected)) {
+                        int n = in.read(buffer);
+                        assertThat(n).isNotEqualTo(-1);
+                        output.append(buffer, 0, n);
+                        screen = new Screen(GameSession.HEIGHT + 1, GameSession.WIDTH);
+                        screen.play(output);
+                    }
+                } catch (SocketTimeoutException e) {
+                    // Fall through and report the difference.
+                }
+                assertThat(screen.line(1)).startsWith(expected[0]);
+                for (int line = 2; line <= GameSession.HEIGHT + 1; line++) {
+                    assertThat(screen.line(line)).isEqualTo(expected[line - 1]);
+                }
+
+                // :q ends the session, and the server hangs up.
+                send(socket, ":q");
+                while (in.read(buffer) >= 0) {
+                    continue;
+                }
+            }
+        }
+    }
+
+    @Test
+    public void turnsAwayPlayersPastTheLimit() throws IOException {
+        try (GameServer server = new GameServer(0, 1);
+             Socket first = connect(server)) {
+            server.start();
+            // Wait for the seed prompt, so the first player holds the only session.
+            assertThat(first.getInputStream().read()).isNotEqualTo(-1);
+            try (Socket second = connect(server)) {
+                String reply = new String(second.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+                assertThat(reply).contains("Server full");
+            }
+        }
+    }
+
+    @Test
+    public void releasesTheSessionWhenAPlayerDisconnects() throws Exception {
+        try (GameServer server = new GameServer(0, 4)) {
+            server.start();
+            try (Socket socket = connect(server)) {
+                send(socket, "42s");
+                InputStream in = socket.getInputStream();
+                assertThat(in.read()).isNotEqualTo(-1);
+                assertThat(server.activeSessions()).isEqualTo(1);
+            }
+            long deadline = System.nanoTime() + TIMEOUT_MS * 1_000_000L;
+            while (server.activeSessions() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(server.activeSessions()).isEqualTo(0);
+        }
+    }
+
+    private static Socket connect(GameServer server) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(TIMEOUT_MS);
+        return socket;
+    }
+
+    private static void send(Socket socket, String keys) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(keys.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Just enough of a terminal to follow what AnsiRenderer writes: cursor positioning,
+     * clearing the screen or the rest of a line, and text. Colors are ignored.
+     */
+    private static final class Screen {
+        private final char[][] lines;
+        private int row = 1;
+        private int col = 1;
+
+        Screen(int rows, int cols) {
+            lines = new char[rows][cols];
+            clear();
+        }
+
+        /**
+         * Applies output to the screen, stopping at an escape sequence cut off at the end.
+         */
+        void play(CharSequence output) {
+            int i = 0;
+            while (i < output.length()) {
+                char c = output.charAt(i++);
+                if (c != '\u001b') {
+                    if (row >= 1 && row <= lines.length && col >= 1 && col <= lines[0].length) {
+                        lines[row - 1][col - 1] = c;
+                    }
+                    col++;
+                    continue;
+                }
+                // ESC [ parameters, then a final letter.
+                int start = ++i;
+                while (i < output.length() && !Character.isLetter(output.charAt(i))) {
+                    i++;
+                }
+                if (i == output.length()) {
+                    return;
+                }
+                String params = output.subSequence(start, i).toString();
+                switch (output.charAt(i++)) {
+                    case 'H' -> {
+                        String[] rc = params.isEmpty() ? new String[] {"1", "1"} : params.split(";");
+                        row = Integer.parseInt(rc[0]);
+                        col = Integer.parseInt(rc[1]);
+                    }
+                    case 'J' -> clear();
+                    case 'K' -> {
+                        for (int x = col; row <= lines.length && x <= lines[0].length; x++) {
+                            lines[row - 1][x - 1] = ' ';
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        private void clear() {
+            for (char[] line : lines) {
+                Arrays.fill(line, ' ');
+            }
+        }
+
+        /**
+         * @return true if the HUD starts with expected[0] and line i + 1 holds expected[i]
+         */
+        boolean shows(String[] expected) {
+            if (!line(1).startsWith(expected[0])) {
+                return false;
+            }
+            for (int i = 1; i < expected.length; i++) {
+                if (!line(i + 1).equals(expected[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the text on the given 1-based line, without trailing spaces
+         */
+        String line(int n) {
+            return new String(lines[n - 1]).stripTrailing();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+/**
+ * Replays key strings and checks they end the way the same keys end a game.
+ */
+public class ReplayTest {
+    @Test
+    public void winsWithTheMovesThatWinAGame() {
+        for (WorldGenerator.Kind generator : WorldGenerator.Kind.values()) {
+            // Let auto-walk clear the level and note the keys it moved with.
+            GameSession game = GameSession.newGame(GameSession.WIDTH, GameSession.HEIGHT, 3, generator);
+            StringBuilder keys = new StringBuilder();
+            GameSession.Event event = GameSession.Event.NONE;
+            while (event != GameSession.Event.WON && game.startAutoWalkToNearestCoin()) {
+                while (game.isAutoWalking() && event != GameSession.Event.WON) {
+                    event = game.stepAutoWalk();
+                    keys.append(game.getLastMove());
+                }
+            }
+            assertThat(event).isEqualTo(GameSession.Event.WON);
+
+            Replay replay = new Replay(GameSession.WIDTH, GameSession.HEIGHT, 3, generator);
+            Replay.Result result = replay.run(keys + "dddd");
+            assertThat(result.won()).isTrue();
+            assertThat(result.coinsCollected()).isEqualTo(result.totalCoins());
+            assertThat(result.movesMade()).isEqualTo(keys.length());
+            assertThat(result.keysProcessed()).isEqualTo(keys.length());
+            assertThat(result.avatarX()).isEqualTo(game.getAvatarX());
+            assertThat(result.avatarY()).isEqualTo(game.getAvatarY());
+
+            // Runs play on copies of the top level, so the next one starts from scratch.
+            Replay.Result again = replay.run(keys + "dddd");
+            assertThat(again.movesMade()).isEqualTo(result.movesMade());
+            assertThat(again.world()).isEqualTo(result.world());
+            assertThat(replay.run("").world())
+                    .isEqualTo(GameSession.newGame(GameSession.WIDTH, GameSession.HEIGHT, 3, generator).getWorld());
+        }
+    }
+
+    @Test
+    public void everySaveAndQuitEndsTheReplay() {
+        Replay replay = new Replay(11);
+        for (String quit : new String[] {":q", ":n", ":4"}) {
+            Replay.Result result = replay.run("2dd" + quit + "dddd");
+            assertThat(result.quit()).isTrue();
+            assertThat(result.keysProcessed()).isEqualTo(5);
+            assertThat(result.lastSavedSlot()).isEqualTo(quit.equals(":4") ? 4 : 2);
+        }
+        Replay.Result result = replay.run("dd:xdd");
+        assertThat(result.quit()).isFalse();
+        assertThat(result.keysProcessed()).isEqualTo(6);
+    }
+}
@@ -0,0 +1,215 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import utils.Varint;
+
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Reads saves built byte by byte in the binary format, and saves written with Java
+ * serialization before it.
+ */
+public class SaveCodecTest {
+    @Test
+    public void readsJavaSerializedSaves() throws IOException {
+        World world = generate(7);
+        Point coin = new Point(world.getCoinX(4), world.getCoinY(4));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new GameState(7, new Point(3, 5), List.of(coin)));
+        }
+        GameState state = SaveCodec.decode(bytes.toByteArray());
+        assertThat(state.getSeed()).isEqualTo(7);
+        assertThat(state.getAvatarPosition()).isEqualTo(new Point(3, 5));
+        assertThat(state.getGenerator()).isEqualTo(WorldGenerator.Kind.ROOMS);
+        assertThat(state.getDepth()).isEqualTo(0);
+        assertThat(state.isLegacy()).isTrue();
+        assertThat(state.getCollectedCoins(world)).isEqualTo(BitSet.valueOf(new long[] {bits(4)}));
+        assertThrows(IllegalArgumentException.class, () -> SaveCodec.encode(state));
+
+        GameSession session = GameSession.restore(GameSession.WIDTH, GameSession.HEIGHT, state);
+        assertThat(session.getCoinsCollected()).isEqualTo(1);
+        assertThat(session.getWorld()[coin.x][coin.y]).isEqualTo(world.getCoinGround(4));
+        assertThat(SaveCodec.decode(SaveCodec.encode(session.toGameState())).isLegacy()).isFalse();
+    }
+
+    @Test
+    public void roundTripsByteForByte() throws IOException {
+        GameState state = levelsState();
+        byte[] encoded = SaveCodec.encode(state);
+        byte[] delta = state.getTileDelta();
+        byte[] levelDelta = state.getOtherLevels().get(0).tileDelta();
+        byte[] built = save(SaveCodec.VERSION, body -> {
+            writeHead(body, Long.MIN_VALUE, 70);
+            body.writeLong(bits(0, 63));
+            body.writeLong(bits(5));
+            Varint.writeUnsignedInt(body, delta.length);
+            body.write(delta);
+            Varint.writeUnsignedInt(body, WorldGenerator.Kind.OUTDOOR.ordinal());
+            Varint.writeUnsignedInt(body, 2);
+            Varint.writeUnsignedInt(body, 2);
+            Varint.writeUnsignedInt(body, 0);
+            Varint.writeUnsignedInt(body, 10);
+            body.writeLong(bits(9));
+            Varint.writeUnsignedInt(body, levelDelta.length);
+            body.write(levelDelta);
+            Varint.writeUnsignedInt(body, 1);
+            Varint.writeUnsignedInt(body, 0);
+            Varint.writeUnsignedInt(body, 2);
+            Varint.writeUnsignedInt(body, 0);
+            Varint.writeUnsignedInt(body, 0);
+        });
+        assertThat(encoded).isEqualTo(built);
+
+        GameState decoded = SaveCodec.decode(encoded);
+        assertThat(decoded.getSeed()).isEqualTo(Long.MIN_VALUE);
+        assertThat(decoded.getAvatarPosition()).isEqualTo(new Point(1, 1));
+        assertThat(decoded.getGenerator()).isEqualTo(WorldGenerator.Kind.OUTDOOR);
+        assertThat(decoded.getDepth()).isEqualTo(2);
+        assertThat(decoded.getCollected()).isEqualTo(state.getCollected());
+        assertThat(decoded.getCoinCount()).isEqualTo(70);
+        assertThat(decoded.getTileDelta()).isEqualTo(delta);
+        assertThat(decoded.getOtherLevels().keySet()).containsExactly(0, 1).inOrder();
+        GameState.LevelState top = decoded.getOtherLevels().get(0);
+        assertThat(top.collected()).isEqualTo(BitSet.valueOf(new long[] {bits(9)}));
+        assertThat(top.coinCount()).isEqualTo(10);
+        assertThat(top.tileDelta()).isEqualTo(levelDelta);
+        assertThat(SaveCodec.encode(decoded)).isEqualTo(encoded);
+    }
+
+    @Test
+    public void rejectsEveryTruncatedSave() throws IOException {
+        byte[] encoded = SaveCodec.encode(levelsState());
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] prefix = Arrays.copyOf(encoded, length);
+            assertThrows(IOException.class, () -> SaveCodec.decode(prefix), "prefix of " + length + " bytes");
+        }
+    }
+
+    @Test
+    public void rejectsABadChecksum() throws IOException {
+        byte[] encoded = SaveCodec.encode(levelsState());
+        for (int i : new int[] {6, encoded.length / 2, encoded.length - 1}) {
+            byte[] corrupt = encoded.clone();
+            corrupt[i] ^= 0x10;
+            IOException e = assertThrows(IOException.class, () -> SaveCodec.decode(corrupt));
+            assertThat(e).hasMessageThat().contains("checksum");
+        }
+    }
+
+    @Test
+    public void rejectsUnknownVersionsAndOtherFiles() throws IOException {
+        for (int version : new int[] {0, SaveCodec.VERSION + 1}) {
+            byte[] bytes = save(version, body -> writeHead(body, 1, 0));
+            IOException e = assertThrows(IOException.class, () -> SaveCodec.decode(bytes));
+            assertThat(e).hasMessageThat().contains("Unsupported save version " + version);
+        }
+        assertThrows(IOException.class, () -> SaveCodec.decode("not a save".getBytes()));
+    }
+
+    @Test
+    public void rejectsARepeatedLevel() throws IOException {
+        // Level 0 twice, then the current level again.
+        for (int[] levels : new int[][] {{0, 0}, {1}}) {
+            byte[] bytes = save(SaveCodec.VERSION, body -> {
+                writeHead(body, 1, 0);
+                Varint.writeUnsignedInt(body, 0);
+                Varint.writeUnsignedInt(body, 0);
+                Varint.writeUnsignedInt(body, 1);
+                Varint.writeUnsignedInt(body, levels.length);
+                for (int depth : levels) {
+                    Varint.writeUnsignedInt(body, depth);
+                    Varint.writeUnsignedInt(body, 0);
+                    Varint.writeUnsignedInt(body, 0);
+                }
+            });
+            IOException e = assertThrows(IOException.class, () -> SaveCodec.decode(bytes));
+            assertThat(e).hasMessageThat().contains("repeated");
+        }
+    }
+
+    @Test
+    public void rejectsCoinsPastTheCount() throws IOException {
+        byte[] bytes = save(SaveCodec.VERSION, body -> {
+            writeHead(body, 1, 3);
+            body.writeLong(bits(3));
+            Varint.writeUnsignedInt(body, 0);
+            Varint.writeUnsignedInt(body, 0);
+            Varint.writeUnsignedInt(body, 0);
+            Varint.writeUnsignedInt(body, 0);
+        });
+        assertThrows(IOException.class, () -> SaveCodec.decode(bytes));
+    }
+
+    // A game two levels down with 70 coins, so the bitset takes two longs, with the top
+    // level changed and level 1 visited but untouched.
+    private static GameState levelsState() {
+        BitSet collected = BitSet.valueOf(new long[] {bits(0, 63), bits(5)});
+        byte[] delta = TileDelta.encode(new TileDiff(40, 20, new int[] {0, 1, 2, 399, 799},
+                new byte[] {1, 2, 3, 13, 15}));
+        byte[] levelDelta = TileDelta.encode(new TileDiff(40, 20, new int[] {21}, new byte[] {2}));
+        Map<Integer, GameState.LevelState> others = Map.of(
+                0, new GameState.LevelState(BitSet.valueOf(new long[] {bits(9)}), 10, levelDelta),
+                1, new GameState.LevelState(new BitSet(), 0, TileDelta.encode(new TileDiff(40, 20,
+                        new int[0], new byte[0]))));
+        return new GameState(Long.MIN_VALUE, WorldGenerator.Kind.OUTDOOR, 2, new Point(1, 1), collected, 70,
+                delta, others);
+    }
+
+    private static World generate(long seed) {
+        World world = new World(GameSession.WIDTH, GameSession.HEIGHT, seed);
+        world.generate();
+        return world;
+    }
+
+    private static long bits(int... ordinals) {
+        long word = 0;
+        for (int i : ordinals) {
+            word |= 1L << i;
+        }
+        return word;
+    }
+
+    // Seed, avatar at (1, 1), and the coin count.
+    private static void writeHead(DataOutputStream body, long seed, int coins) throws IOException {
+        Varint.writeSignedLong(body, seed);
+        Varint.writeUnsignedInt(body, 1);
+        Varint.writeUnsignedInt(body, 1);
+        Varint.writeUnsignedInt(body, coins);
+    }
+
+    private interface Body {
+        void write(DataOutputStream body) throws IOException;
+    }
+
+    /**
+     * Frames a body as SaveCodec does: magic, version, length, body, CRC32.
+     */
+    private static byte[] save(int version, Body body) throws IOException {
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        body.write(new DataOutputStream(bodyBytes));
+        CRC32 crc = new CRC32();
+        crc.update(bodyBytes.toByteArray());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(SaveCodec.MAGIC);
+        data.writeByte(version);
+        Varint.writeUnsignedInt(data, bodyBytes.size());
+        bodyBytes.writeTo(data);
+        data.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,84 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import utils.Varint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Encodes diffs to the run format and back, and reads damaged deltas.
+ */
+public class TileDeltaTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 21;
+
+    @Test
+    public void anEmptyDiffIsTwoBytes() throws IOException {
+        byte[] delta = TileDelta.encode(new TileDiff(WIDTH, HEIGHT, new int[0], new byte[0]));
+        assertThat(delta).isEqualTo(new byte[] {0, 0});
+        assertThat(TileDelta.decode(delta, WIDTH, HEIGHT).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void neighbouringCellsShareARunAcrossColumns() throws IOException {
+        // The last cell of column 0 and the first of column 1, then the very last cell.
+        int last = WIDTH * HEIGHT - 1;
+        byte[] delta = TileDelta.encode(new TileDiff(WIDTH, HEIGHT, new int[] {HEIGHT - 1, HEIGHT, last},
+                new byte[] {13, 2, 15}));
+        assertThat(delta).isEqualTo(bytes(HEIGHT - 1, 2, 13, 2, last - (HEIGHT + 1), 1, 15, 0, 0));
+    }
+
+    @Test
+    public void roundTripsRandomDiffs() throws IOException {
+        Random random = new Random(61);
+        for (int round = 0; round < 50; round++) {
+            int[] cells = random.ints(random.nextInt(200), 0, WIDTH * HEIGHT).sorted().distinct().toArray();
+            byte[] ids = new byte[cells.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (byte) random.nextInt(16);
+            }
+            TileDiff decoded = TileDelta.decode(TileDelta.encode(new TileDiff(WIDTH, HEIGHT, cells, ids)),
+                    WIDTH, HEIGHT);
+            assertThat(decoded.size()).isEqualTo(cells.length);
+            for (int i = 0; i < cells.length; i++) {
+                assertThat(decoded.cell(i)).isEqualTo(cells[i]);
+                assertThat(decoded.id(i)).isEqualTo(ids[i]);
+            }
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedDeltas() {
+        byte[] delta = TileDelta.encode(new TileDiff(WIDTH, HEIGHT, new int[] {3, 4, 200}, new byte[] {1, 2, 3}));
+        for (int length = 0; length < delta.length; length++) {
+            byte[] prefix = Arrays.copyOf(delta, length);
+            assertThrows(IOException.class, () -> TileDelta.decode(prefix, WIDTH, HEIGHT),
+                    "prefix of " + length + " bytes");
+        }
+    }
+
+    @Test
+    public void rejectsRunsPastTheGridAndUnknownTiles() throws IOException {
+        IOException e = assertThrows(IOException.class,
+                () -> TileDelta.decode(bytes(WIDTH * HEIGHT - 1, 2, 1, 1, 0, 0), WIDTH, HEIGHT));
+        assertThat(e).hasMessageThat().contains("past end");
+        e = assertThrows(IOException.class, () -> TileDelta.decode(bytes(0, 1, 200, 0, 0), WIDTH, HEIGHT));
+        assertThat(e).hasMessageThat().contains("unknown tile id 200");
+    }
+
+    private static byte[] bytes(int... varints) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int v : varints) {
+            Varint.writeUnsignedInt(out, v);
+        }
+        return bytes.toByteArray();
+    }
+}
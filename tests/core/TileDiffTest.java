@@ -0,0 +1,100 @@
+package core;
+
+import org.junit.jupiter.api.Test;
+import tileengine.TETile;
+import tileengine.Tileset;
+
+import java.util.Arrays;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Diffs grids that don't fill their last row and column of chunks, with changes on both
+ * sides of every chunk edge.
+ */
+public class TileDiffTest {
+    // Two full chunks and part of a third across, one and part of a second down.
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 21;
+
+    @Test
+    public void aSnapshotHasNoDiff() {
+        TileGrid grid = TileGrid.of(world());
+        assertThat(TileDiff.between(grid, grid.snapshot()).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void findsChangesOnBothSidesOfChunkEdgesInCellOrder() {
+        TileGrid from = TileGrid.of(world());
+        TileGrid to = from.snapshot();
+        int[][] changes = {
+            {36, 20}, {16, 16}, {15, 15}, {0, 0}, {16, 15}, {15, 16}, {32, 0}, {31, 20}, {0, 20}, {36, 0},
+        };
+        for (int[] c : changes) {
+            to.set(c[0], c[1], next(from.get(c[0], c[1])));
+        }
+        // Writing a tile back leaves its chunk copied but unchanged.
+        to.set(20, 3, Tileset.WATER);
+        to.set(20, 3, from.get(20, 3));
+
+        TileDiff diff = TileDiff.between(from, to);
+        int[] expected = Arrays.stream(changes).mapToInt(c -> c[0] * HEIGHT + c[1]).sorted().toArray();
+        int[] cells = new int[diff.size()];
+        for (int i = 0; i < diff.size(); i++) {
+            cells[i] = diff.cell(i);
+            assertThat(diff.id(i)).isEqualTo(to.id(cells[i] / HEIGHT, cells[i] % HEIGHT));
+        }
+        assertThat(cells).isEqualTo(expected);
+        assertThat(TileDiff.between(to, from).size()).isEqualTo(changes.length);
+    }
+
+    @Test
+    public void applyingADiffTurnsOneGridIntoTheOther() {
+        TETile[][] world = world();
+        TileGrid from = TileGrid.of(world);
+        TileGrid to = from.snapshot();
+        for (int x = 0; x < WIDTH; x += 5) {
+            for (int y = x % 3; y < HEIGHT; y += 4) {
+                to.set(x, y, next(from.get(x, y)));
+            }
+        }
+        TileDiff diff = TileDiff.between(from, to);
+
+        diff.applyTo(from);
+        assertThat(TileDiff.between(from, to).isEmpty()).isTrue();
+        diff.applyTo(world);
+        TETile[][] expected = new TETile[WIDTH][HEIGHT];
+        to.copyInto(expected);
+        assertThat(world).isEqualTo(expected);
+    }
+
+    @Test
+    public void rejectsGridsOfAnotherSize() {
+        TileGrid grid = TileGrid.of(world());
+        TileGrid smaller = TileGrid.of(world(WIDTH, HEIGHT - 1));
+        assertThrows(IllegalArgumentException.class, () -> TileDiff.between(grid, smaller));
+        TileDiff diff = TileDiff.between(grid, grid.snapshot());
+        assertThrows(IllegalArgumentException.class, () -> diff.applyTo(new TETile[WIDTH - 1][HEIGHT]));
+        assertThrows(IllegalArgumentException.class, () -> diff.applyTo(smaller));
+    }
+
+    private static TETile next(TETile tile) {
+        return Tileset.byId((tile.id() + 1) % 16);
+    }
+
+    // Every tile from the tileset, in a pattern that repeats along both axes.
+    private static TETile[][] world() {
+        return world(WIDTH, HEIGHT);
+    }
+
+    private static TETile[][] world(int width, int height) {
+        TETile[][] world = new TETile[width][height];
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                world[x][y] = Tileset.byId((x * 3 + y) % 16);
+            }
+        }
+        return world;
+    }
+}